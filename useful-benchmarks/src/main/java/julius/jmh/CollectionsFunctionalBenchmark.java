@@ -0,0 +1,69 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import julius.utilities.collection.CollectionsFunctional;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * split and flattenToList of CollectionsFunctional
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectionsFunctionalBenchmark {
+
+	private static final int PART_SIZE = 100;
+
+	private final CollectionsFunctional functional = new CollectionsFunctional();
+	private List<List<Integer>> parts;
+
+	/**
+	 * prepares the input for flattenToList (split itself is not measured here)
+	 * @param data
+	 */
+	@Setup
+	public void setUp(final SizedData data) {
+		parts = functional.split(data.first, PART_SIZE);
+	}
+
+	@Benchmark
+	public List<List<Integer>> split(final SizedData data) {
+		return functional.split(data.first, PART_SIZE);
+	}
+
+	@Benchmark
+	public List<Integer> flattenToList() {
+		return functional.flattenToList(parts);
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.jmh;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import julius.utilities.collection.CollectionsLogical;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Set theory operations of CollectionsLogical (also used by the CollectionHelper facade)
+ * 
+ * NOTE: intersection and symmetricDifference use List.retainAll/removeAll and are therefore quadratic,
+ * the 10M runs will take a very long time. Use -p size=1000,100000 for a quick baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectionsLogicalBenchmark {
+
+	private final CollectionsLogical logical = new CollectionsLogical();
+
+	@SuppressWarnings("unchecked")
+	@Benchmark
+	public List<Integer> intersection(final SizedData data) {
+		return logical.intersection(data.first, data.second);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Benchmark
+	public List<Integer> union(final SizedData data) {
+		return logical.union(data.first, data.second);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Benchmark
+	public Collection<Integer> symmetricDifference(final SizedData data) {
+		return logical.symmetricDifference(data.first, data.second);
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import julius.lambda.Filter;
+import julius.lambda.FoldOperation;
+import julius.lambda.Functional;
+import julius.lambda.Operation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * filter/map/foldLeft/foldRight of julius.lambda.Functional
+ * 
+ * the function objects are static members (as advised in julius.lambda.Lambda) so only the traversal is measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionalBenchmark {
+
+	private static final Filter<Integer> EVEN = new Filter<Integer>() {
+		@Override
+		public boolean applicable(final Integer val) {
+			return val % 2 == 0;
+		}
+	};
+
+	private static final Operation<Integer, Long> TWICE = new Operation<Integer, Long>() {
+		@Override
+		public Long apply(final Integer t) {
+			return 2L * t;
+		}
+	};
+
+	private static final FoldOperation<Integer, Long> SUM = new FoldOperation<Integer, Long>() {
+		@Override
+		public Long apply(final Integer t, final Long current) {
+			return current + t;
+		}
+	};
+
+	private final Functional functional = new Functional();
+
+	@Benchmark
+	public List<Integer> filter(final SizedData data) {
+		return functional.filter(data.first, EVEN);
+	}
+
+	@Benchmark
+	public List<Long> map(final SizedData data) {
+		return functional.map(data.first, TWICE);
+	}
+
+	@Benchmark
+	public Long foldLeft(final SizedData data) {
+		return functional.foldLeft(data.first, SUM, 0L);
+	}
+
+	@Benchmark
+	public Long foldRight(final SizedData data) {
+		return functional.foldRight(data.first, SUM, 0L);
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import julius.utilities.collection.MultiHashMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GenericMultiMap.addForKey (through MultiHashMap) for 'size' values spread over a fixed number of keys
+ * 
+ * addForKey copies the value set on every call, so the cost grows with the number of values per key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenericMultiMapBenchmark {
+
+	private static final int KEYS = 1024;
+
+	@Benchmark
+	public MultiHashMap<Integer, Integer> addForKey(final SizedData data) {
+		MultiHashMap<Integer, Integer> map = new MultiHashMap<Integer, Integer>();
+		List<Integer> values = data.first;
+		for (Integer value : values) {
+			map.addForKey(value % KEYS, value);
+		}
+		return map;
+	}
+}
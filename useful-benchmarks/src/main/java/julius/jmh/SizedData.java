@@ -0,0 +1,63 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Shared benchmark input: two half overlapping lists of 'size' Integers.
+ * 
+ * first  = 0 .. size-1
+ * second = size/2 .. size/2 + size-1
+ * 
+ * the sizes can be restricted from the command line with -p size=1000,100000
+ */
+@State(Scope.Benchmark)
+public class SizedData {
+
+	/** number of elements per collection */
+	@Param({ "1000", "100000", "10000000" })
+	public int size;
+
+	/** 0 .. size-1 */
+	public List<Integer> first;
+	/** size/2 .. size/2 + size-1 */
+	public List<Integer> second;
+
+	/**
+	 * creates the input once per trial, so only the measured operation is timed
+	 */
+	@Setup
+	public void setUp() {
+		first = range(0, size);
+		second = range(size / 2, size);
+	}
+
+	private static List<Integer> range(final int from, final int length) {
+		List<Integer> result = new ArrayList<Integer>(length);
+		for (int i = 0; i < length; i++) {
+			result.add(from + i);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.benchmark;
+
+import java.lang.management.ManagementFactory;
+
+import julius.validation.Assertions;
+
+/**
+ * Measures the exact number of bytes a block of code allocates on the current thread, without forcing a GC
+ * (in contrast to MemoryHelper.getUsedMB). Based on the per-thread allocation counter of the HotSpot
+ * com.sun.management.ThreadMXBean, so it is cheap enough to use per request in production.
+ * 
+ * AllocationProbe probe = new AllocationProbe();
+ * probe.start();
+ * handle(request);
+ * long bytes = probe.stop();
+ * 
+ * Like StopWatch it supports multiple start/stop sequences and it is not threadsafe (it measures the thread
+ * that calls start/stop, so use one instance per thread). When the JVM does not support the counter 
+ * isSupported() is false and the probe measures 0.
+ */
+public class AllocationProbe {
+
+	private static final com.sun.management.ThreadMXBean THREADS = findThreadBean();
+
+	private boolean running;
+	private long start;
+	private long allocated;
+
+	/**
+	 * @return true when the JVM counts the allocated bytes per thread
+	 */
+	public static boolean isSupported(){
+		return THREADS != null;
+	}
+
+	/**
+	 * @return the number of bytes the current thread allocated since it was started, or 0 if not supported
+	 */
+	public static long getAllocatedBytesOfCurrentThread(){
+		if(THREADS == null){
+			return 0;
+		}
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * resets the probe for new measurements
+	 */
+	public void reset(){
+		running = false;
+		start = 0;
+		allocated = 0;
+	}
+
+	/**
+	 * starts the measurement (or resumes)
+	 */
+	public void start(){
+		running = true;
+		start = getAllocatedBytesOfCurrentThread();
+	}
+
+	/**
+	 * stop or pause the measurement, should be called by the same thread as start
+	 * @return the bytes allocated between start and stop (accumulated over multiple start/stop sequences)
+	 */
+	public long stop(){
+		long end = getAllocatedBytesOfCurrentThread();
+		Assertions.state.assertTrue(running, "first call start, then stop");
+		running = false;
+		allocated += end - start;
+		return allocated;
+	}
+
+	/**
+	 * @return the accumulated number of allocated bytes
+	 */
+	public long getAllocatedBytes(){
+		return allocated;
+	}
+
+	private static com.sun.management.ThreadMXBean findThreadBean(){
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean)){
+			return null;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		try{
+			if(!threads.isThreadAllocatedMemorySupported()){
+				return null;
+			}
+			if(!threads.isThreadAllocatedMemoryEnabled()){
+				threads.setThreadAllocatedMemoryEnabled(true);
+			}
+			return threads;
+		}catch(UnsupportedOperationException e){
+			return null;
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import julius.validation.Assertions;
+
+/**
+ * Call tree of the timing scopes of one thread (see TimingScopes)
+ * 
+ * every node accumulates the invocations of a scope with the same name under the same parent,
+ * self time is the total time minus the total time of the child scopes.
+ * 
+ * Only the thread of the tree changes it, new scopes and the times of an ended scope are written under a lock 
+ * (the tree) and read under the same lock, so other threads can safely read the tree. The times of a scope 
+ * that is still running are not included yet.
+ */
+public class CallTree {
+
+	private final String threadName;
+	private final long threadId;
+	private final WeakReference<Thread> thread;
+	private final Node root = new Node("(root)", null, this);
+	private Node current = root;
+
+	CallTree(final Thread thread){
+		this.threadName = thread.getName();
+		this.threadId = thread.getId();
+		this.thread = new WeakReference<Thread>(thread);
+	}
+
+	void enter(final String name, final long now){
+		current = current.child(name);
+		current.start = now;
+	}
+
+	void exit(final long now){
+		Assertions.state.assertTrue(current != root, "first call enter, then exit");
+		synchronized (this) {
+			current.count++;
+			current.total += now - current.start;
+		}
+		current = current.parent;
+	}
+
+	/**
+	 * @return the (unnamed) root, its children are the outermost scopes
+	 */
+	public Node getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return name of the thread that built the tree
+	 */
+	public String getThreadName() {
+		return threadName;
+	}
+
+	/**
+	 * @return id of the thread that built the tree
+	 */
+	public long getThreadId() {
+		return threadId;
+	}
+
+	/**
+	 * @return false when the thread of the tree has ended
+	 */
+	public boolean isThreadAlive() {
+		Thread owner = thread.get();
+		return owner != null && owner.isAlive();
+	}
+
+	/**
+	 * forgets all measurements, only allowed outside of a scope
+	 */
+	void reset(){
+		Assertions.state.assertTrue(current == root, "reset is not allowed within a scope");
+		synchronized (this) {
+			root.children.clear();
+		}
+	}
+
+	/**
+	 * @return indented report with one line per scope: count, total and self time in micros
+	 */
+	public String getReport(){
+		StringBuilder builder = new StringBuilder();
+		builder.append("== timing scopes of ").append(threadName).append(" ==\n");
+		for(Node child: root.getChildren()){
+			append(builder, child, 0);
+		}
+		return builder.toString();
+	}
+
+	private static void append(final StringBuilder builder, final Node node, final int depth){
+		for(int i=0; i<depth; i++){
+			builder.append("  ");
+		}
+		builder.append(node.getName());
+		builder.append("\tcount:").append(node.getCount());
+		builder.append("\ttotal:").append(node.getTotalNanos() / 1000);
+		builder.append("us\tself:").append(node.getSelfNanos() / 1000);
+		builder.append("us\n");
+		for(Node child: node.getChildren()){
+			append(builder, child, depth + 1);
+		}
+	}
+
+	/**
+	 * one named scope in the tree
+	 */
+	public static class Node {
+
+		private final String name;
+		private final Node parent;
+		private final CallTree tree;
+		private final Map<String, Node> children = new LinkedHashMap<String, Node>();
+		private long count;
+		private long total;
+		private long start;
+
+		Node(final String name, final Node parent, final CallTree tree){
+			this.name = name;
+			this.parent = parent;
+			this.tree = tree;
+		}
+
+		/**
+		 * only called by the thread of the tree, so the lookup needs no lock
+		 */
+		Node child(final String childName){
+			Node child = children.get(childName);
+			if(child == null){
+				child = new Node(childName, this, tree);
+				synchronized (tree) {
+					children.put(childName, child);
+				}
+			}
+			return child;
+		}
+
+		/**
+		 * @return name of the scope
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return number of completed invocations
+		 */
+		public long getCount() {
+			synchronized (tree) {
+				return count;
+			}
+		}
+
+		/**
+		 * @return time within the scope, including the child scopes
+		 */
+		public long getTotalNanos() {
+			synchronized (tree) {
+				return total;
+			}
+		}
+
+		/**
+		 * @return time within the scope, excluding the child scopes (0 while the child scopes of a running 
+		 * invocation exceed the time of the ended invocations)
+		 */
+		public long getSelfNanos() {
+			synchronized (tree) {
+				long self = total;
+				for(Node child: children.values()){
+					self -= child.total;
+				}
+				return Math.max(0, self);
+			}
+		}
+
+		/**
+		 * @return copy of the child scopes in order of first invocation
+		 */
+		public Collection<Node> getChildren() {
+			synchronized (tree) {
+				return Collections.unmodifiableCollection(new ArrayList<Node>(children.values()));
+			}
+		}
+
+		/**
+		 * @param childName
+		 * @return the child scope or null
+		 */
+		public Node getChild(final String childName) {
+			synchronized (tree) {
+				return children.get(childName);
+			}
+		}
+	}
+}
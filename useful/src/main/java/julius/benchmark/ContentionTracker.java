@@ -0,0 +1,313 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental alternative for ThreadStatHelper.getLockInfo(), instead of dumping the current monitors of all threads
+ * it reports how much time each thread (and each lock) was blocked/waiting between two calls of next().
+ * 
+ * ContentionTracker tracker = new ContentionTracker();
+ * ..
+ * log.info(tracker.next().getReport()); // every minute
+ * 
+ * It turns on thread contention monitoring of the JVM (when supported), without it only the counts are reported.
+ * 
+ * The blocked/waited time of a thread is attributed to the lock it is blocked on (or waiting for) at the end of
+ * the interval, or at the start when it is no longer blocked. This is an approximation, a thread that contended
+ * on several locks within one interval is attributed to only one of them, so keep the interval short enough.
+ */
+public class ContentionTracker {
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private Map<Long, ThreadInfo> previous;
+
+	/**
+	 * enables contention monitoring and takes the first snapshot
+	 */
+	public ContentionTracker(){
+		if(threads.isThreadContentionMonitoringSupported()){
+			threads.setThreadContentionMonitoringEnabled(true);
+		}
+		previous = snapshot();
+	}
+
+	/**
+	 * @return the contention since the former call (or the construction)
+	 */
+	public synchronized Contention next(){
+		Map<Long, ThreadInfo> current = snapshot();
+		List<ThreadContention> result = new ArrayList<ThreadContention>();
+		for(ThreadInfo now: current.values()){
+			ThreadInfo before = previous.get(now.getThreadId());
+			String lock = now.getLockName();
+			if(lock == null && before != null){
+				lock = before.getLockName();
+			}
+			result.add(new ThreadContention(now.getThreadName(), lock,
+					now.getBlockedCount() - (before == null ? 0 : before.getBlockedCount()),
+					delta(now.getBlockedTime(), before == null ? 0 : before.getBlockedTime()),
+					now.getWaitedCount() - (before == null ? 0 : before.getWaitedCount()),
+					delta(now.getWaitedTime(), before == null ? 0 : before.getWaitedTime())));
+		}
+		previous = current;
+		return new Contention(result);
+	}
+
+	private Map<Long, ThreadInfo> snapshot(){
+		Map<Long, ThreadInfo> result = new HashMap<Long, ThreadInfo>();
+		for(ThreadInfo info: threads.getThreadInfo(threads.getAllThreadIds())){
+			if(info != null){ // thread died in the mean time
+				result.put(info.getThreadId(), info);
+			}
+		}
+		return result;
+	}
+
+	/** times are -1 when monitoring is disabled */
+	private static long delta(final long now, final long before){
+		if(now < 0){
+			return 0;
+		}
+		return now - Math.max(before, 0);
+	}
+
+	/**
+	 * contention of one thread within the interval
+	 */
+	public static class ThreadContention {
+
+		private final String threadName;
+		private final String lockName;
+		private final long blockedCount;
+		private final long blockedTimeInMs;
+		private final long waitedCount;
+		private final long waitedTimeInMs;
+
+		ThreadContention(final String threadName, final String lockName, final long blockedCount, final long blockedTimeInMs, final long waitedCount, final long waitedTimeInMs) {
+			this.threadName = threadName;
+			this.lockName = lockName;
+			this.blockedCount = blockedCount;
+			this.blockedTimeInMs = blockedTimeInMs;
+			this.waitedCount = waitedCount;
+			this.waitedTimeInMs = waitedTimeInMs;
+		}
+
+		/**
+		 * @return name of the thread
+		 */
+		public String getThreadName() {
+			return threadName;
+		}
+
+		/**
+		 * @return the lock the thread was blocked on/waiting for (or null)
+		 */
+		public String getLockName() {
+			return lockName;
+		}
+
+		/**
+		 * @return number of times the thread blocked on a monitor
+		 */
+		public long getBlockedCount() {
+			return blockedCount;
+		}
+
+		/**
+		 * @return time blocked on monitors
+		 */
+		public long getBlockedTimeInMs() {
+			return blockedTimeInMs;
+		}
+
+		/**
+		 * @return number of times the thread waited (wait/park/join)
+		 */
+		public long getWaitedCount() {
+			return waitedCount;
+		}
+
+		/**
+		 * @return time waited
+		 */
+		public long getWaitedTimeInMs() {
+			return waitedTimeInMs;
+		}
+
+		@Override
+		public String toString() {
+			return threadName + "\tblocked:" + blockedCount + "x " + blockedTimeInMs + "ms\twaited:" + waitedCount + "x " + waitedTimeInMs + "ms\ton:" + lockName;
+		}
+	}
+
+	/**
+	 * contention on one lock within the interval, summed over all threads
+	 */
+	public static class LockContention {
+
+		private final String lockName;
+		private long blockedCount;
+		private long blockedTimeInMs;
+		private long waitedTimeInMs;
+		private int threads;
+
+		LockContention(final String lockName) {
+			this.lockName = lockName;
+		}
+
+		void add(final ThreadContention thread){
+			blockedCount += thread.getBlockedCount();
+			blockedTimeInMs += thread.getBlockedTimeInMs();
+			waitedTimeInMs += thread.getWaitedTimeInMs();
+			threads++;
+		}
+
+		/**
+		 * @return name of the lock (class@hash)
+		 */
+		public String getLockName() {
+			return lockName;
+		}
+
+		/**
+		 * @return number of times threads blocked on this lock
+		 */
+		public long getBlockedCount() {
+			return blockedCount;
+		}
+
+		/**
+		 * @return time threads were blocked on this lock
+		 */
+		public long getBlockedTimeInMs() {
+			return blockedTimeInMs;
+		}
+
+		/**
+		 * @return time threads waited for this lock/condition
+		 */
+		public long getWaitedTimeInMs() {
+			return waitedTimeInMs;
+		}
+
+		/**
+		 * @return number of threads that contended on this lock
+		 */
+		public int getThreads() {
+			return threads;
+		}
+
+		@Override
+		public String toString() {
+			return lockName + "\tblocked:" + blockedCount + "x " + blockedTimeInMs + "ms\twaited:" + waitedTimeInMs + "ms\tthreads:" + threads;
+		}
+	}
+
+	/**
+	 * the contention of all threads and locks within one interval
+	 */
+	public static class Contention {
+
+		private final List<ThreadContention> threads;
+		private final List<LockContention> locks;
+
+		Contention(final List<ThreadContention> threads) {
+			Collections.sort(threads, new Comparator<ThreadContention>() {
+				@Override
+				public int compare(final ThreadContention o1, final ThreadContention o2) {
+					int result = compareDescending(o1.getBlockedTimeInMs(), o2.getBlockedTimeInMs());
+					return result != 0 ? result : compareDescending(o1.getWaitedTimeInMs(), o2.getWaitedTimeInMs());
+				}
+			});
+			this.threads = Collections.unmodifiableList(threads);
+
+			Map<String, LockContention> byLock = new HashMap<String, LockContention>();
+			for(ThreadContention thread: threads){
+				if(thread.getLockName() != null && (thread.getBlockedCount() > 0 || thread.getWaitedCount() > 0)){
+					LockContention lock = byLock.get(thread.getLockName());
+					if(lock == null){
+						lock = new LockContention(thread.getLockName());
+						byLock.put(thread.getLockName(), lock);
+					}
+					lock.add(thread);
+				}
+			}
+			List<LockContention> sorted = new ArrayList<LockContention>(byLock.values());
+			Collections.sort(sorted, new Comparator<LockContention>() {
+				@Override
+				public int compare(final LockContention o1, final LockContention o2) {
+					int result = compareDescending(o1.getBlockedTimeInMs(), o2.getBlockedTimeInMs());
+					return result != 0 ? result : compareDescending(o1.getBlockedCount(), o2.getBlockedCount());
+				}
+			});
+			this.locks = Collections.unmodifiableList(sorted);
+		}
+
+		private static int compareDescending(final long first, final long second){
+			return first > second ? -1 : (first == second ? 0 : 1);
+		}
+
+		/**
+		 * @return all threads, the ones that were blocked the longest first (then the ones that waited the longest)
+		 */
+		public List<ThreadContention> getThreads() {
+			return threads;
+		}
+
+		/**
+		 * @return the contended locks, the ones that blocked threads the longest first
+		 */
+		public List<LockContention> getLocks() {
+			return locks;
+		}
+
+		/**
+		 * @return multiline report of the contended locks and the threads that were blocked
+		 */
+		public String getReport(){
+			StringBuilder builder = new StringBuilder();
+			builder.append("== lock contention ==\n");
+			for(LockContention lock: locks){
+				builder.append(lock);
+				builder.append("\n");
+			}
+			builder.append("== thread contention ==\n");
+			for(ThreadContention thread: threads){
+				if(thread.getBlockedCount() > 0){
+					builder.append(thread);
+					builder.append("\n");
+				}
+			}
+			return builder.toString();
+		}
+
+		@Override
+		public String toString() {
+			return getReport();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import julius.utilities.collection.Histogram;
+
+/**
+ * Result of MemoryHelper.deepSizeOf, the estimated footprint of an object graph
+ * 
+ * the bytes per class are kept as long, getBytesPerClass() is a Histogram view with values 
+ * clamped to Integer.MAX_VALUE (classes with more then 2GB in the graph)
+ * 
+ * when getOpaqueClasses() is not empty the fields of those classes could not be read (java 9+ without --add-opens),
+ * their internals are estimated (Map, Collection, String) or not counted, so the total is a lower bound
+ */
+public class DeepSize {
+
+	private final Map<String, Long> bytesPerClass = new HashMap<String, Long>();
+	private final Histogram<String> instancesPerClass = new Histogram<String>();
+	private final Set<String> opaqueClasses = new TreeSet<String>();
+	private long totalBytes;
+	private long shallowBytes;
+	private long objects;
+
+	void register(final Class<?> type, final long bytes){
+		if(objects == 0){
+			shallowBytes = bytes;
+		}
+		instancesPerClass.register(type.getName());
+		objects++;
+		addBytes(type, bytes);
+	}
+
+	/**
+	 * adds the estimated internals of an opaque object to its class
+	 */
+	void addBytes(final Class<?> type, final long bytes){
+		String name = type.getName();
+		Long current = bytesPerClass.get(name);
+		bytesPerClass.put(name, current == null ? bytes : current + bytes);
+		totalBytes += bytes;
+	}
+
+	void registerOpaque(final Class<?> type){
+		opaqueClasses.add(type.getName());
+	}
+
+	/**
+	 * @return estimated bytes of all objects reachable from the root (including the root), 
+	 * this is the retained size when the objects are not referenced from outside the graph
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * @return names of the classes of which the fields could not be read, the total is then a lower bound
+	 */
+	public Set<String> getOpaqueClasses() {
+		return Collections.unmodifiableSet(opaqueClasses);
+	}
+
+	/**
+	 * @return estimated bytes of the root itself
+	 */
+	public long getShallowBytes() {
+		return shallowBytes;
+	}
+
+	/**
+	 * @return number of objects reachable from the root (including the root)
+	 */
+	public long getObjects() {
+		return objects;
+	}
+
+	/**
+	 * @return class name -> estimated bytes of all its instances in the graph
+	 */
+	public Map<String, Long> getBytesPerClassAsLong() {
+		return Collections.unmodifiableMap(bytesPerClass);
+	}
+
+	/**
+	 * @return class name -> estimated bytes of all its instances in the graph (at most Integer.MAX_VALUE)
+	 */
+	public Histogram<String> getBytesPerClass() {
+		Histogram<String> histogram = new Histogram<String>();
+		for(Map.Entry<String, Long> entry: bytesPerClass.entrySet()){
+			histogram.put(entry.getKey(), (int) Math.min(Integer.MAX_VALUE, entry.getValue()));
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return class name -> number of its instances in the graph
+	 */
+	public Histogram<String> getInstancesPerClass() {
+		return instancesPerClass;
+	}
+
+	@Override
+	public String toString() {
+		return "bytes:" + totalBytes + "\tshallow:" + shallowBytes + "\tobjects:" + objects + "\tper class:" + bytesPerClass 
+				+ (opaqueClasses.isEmpty() ? "" : "\topaque:" + opaqueClasses);
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.lang.management.MemoryUsage;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * One garbage collection as reported by GcMonitor
+ */
+public class GcEvent {
+
+	private final String gcName;
+	private final String action;
+	private final String cause;
+	private final long id;
+	private final long startTimeInMs;
+	private final long durationInMs;
+	private final Map<String, MemoryUsage> before;
+	private final Map<String, MemoryUsage> after;
+
+	/**
+	 * @param gcName name of the collector
+	 * @param action like 'end of minor GC'
+	 * @param cause like 'Allocation Failure' or 'System.gc()'
+	 * @param id sequence number of the collection for this collector
+	 * @param startTimeInMs since the start of the JVM
+	 * @param durationInMs
+	 * @param before usage per memory pool before the collection
+	 * @param after usage per memory pool after the collection
+	 */
+	public GcEvent(final String gcName, final String action, final String cause, final long id, final long startTimeInMs, final long durationInMs, 
+			final Map<String, MemoryUsage> before, final Map<String, MemoryUsage> after) {
+		this.gcName = gcName;
+		this.action = action;
+		this.cause = cause;
+		this.id = id;
+		this.startTimeInMs = startTimeInMs;
+		this.durationInMs = durationInMs;
+		this.before = Collections.unmodifiableMap(before);
+		this.after = Collections.unmodifiableMap(after);
+	}
+
+	/**
+	 * @return name of the collector
+	 */
+	public String getGcName() {
+		return gcName;
+	}
+
+	/**
+	 * @return like 'end of minor GC' or 'end of major GC'
+	 */
+	public String getAction() {
+		return action;
+	}
+
+	/**
+	 * @return like 'Allocation Failure' or 'System.gc()'
+	 */
+	public String getCause() {
+		return cause;
+	}
+
+	/**
+	 * @return sequence number of the collection for this collector
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return start of the collection in millis since the start of the JVM (see RuntimeMXBean.getStartTime)
+	 */
+	public long getStartTimeInMs() {
+		return startTimeInMs;
+	}
+
+	/**
+	 * @return duration of the collection (for stop the world collectors the pause)
+	 */
+	public long getDurationInMs() {
+		return durationInMs;
+	}
+
+	/**
+	 * concurrent collectors (CMS 'ConcurrentMarkSweep', 'ZGC Cycles', 'Shenandoah Cycles', 'G1 Concurrent GC') report
+	 * the duration of a whole cycle that runs next to the application, not a pause
+	 * @return true if the duration is a stop the world pause
+	 */
+	public boolean isPause() {
+		String name = String.valueOf(gcName).toLowerCase();
+		String what = String.valueOf(action).toLowerCase();
+		return !(name.contains("concurrent") || name.contains("cycles") || what.contains("cycle") || what.contains("concurrent"));
+	}
+
+	/**
+	 * @return usage per memory pool before the collection
+	 */
+	public Map<String, MemoryUsage> getBefore() {
+		return before;
+	}
+
+	/**
+	 * @return usage per memory pool after the collection
+	 */
+	public Map<String, MemoryUsage> getAfter() {
+		return after;
+	}
+
+	/**
+	 * @return total used bytes before minus after, over all pools
+	 */
+	public long getReclaimedBytes(){
+		return sumUsed(before) - sumUsed(after);
+	}
+
+	private static long sumUsed(final Map<String, MemoryUsage> usages){
+		long sum = 0;
+		for(MemoryUsage usage: usages.values()){
+			sum += usage.getUsed();
+		}
+		return sum;
+	}
+
+	@Override
+	public String toString() {
+		return gcName + "\t" + action + "\t" + cause + "\t#" + id + "\t" + durationInMs + "ms\treclaimed:" + getReclaimedBytes() + " bytes";
+	}
+}
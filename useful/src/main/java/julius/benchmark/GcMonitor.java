@@ -0,0 +1,159 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import julius.statistics.SignalCounter;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Records every garbage collection (pause duration, cause, memory pool occupancy before and after) by subscribing to
+ * the notifications of the GarbageCollectorMXBeans. This makes it possible to link latency spikes to GC pauses without
+ * separate tooling.
+ * 
+ * GcMonitor monitor = new GcMonitor();
+ * monitor.addListener(myListener);
+ * monitor.countIn(sampler.registerSignalSamplerSec("gc", callback, 60));
+ * monitor.start();
+ * ..
+ * monitor.getPauseRecorder().snapshot().getP99();
+ * 
+ * The notifications are sent by HotSpot JVMs from 1.7.0_04. The data is read from the CompositeData of the notification
+ * (the com.sun.management.GarbageCollectionNotificationInfo type is not available on 1.6), on older JVMs nothing is recorded.
+ */
+public class GcMonitor implements NotificationListener {
+
+	/** type of the gc notifications (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION) */
+	static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+	private static Logger log = Logger.getLogger(GcMonitor.class);
+
+	private final List<GcListener> listeners = new CopyOnWriteArrayList<GcListener>();
+	private final List<SignalCounter> counters = new CopyOnWriteArrayList<SignalCounter>();
+	private final LatencyRecorder pauses = new LatencyRecorder();
+
+	/**
+	 * subscribes to all collectors that can send notifications
+	 * (on JVMs before 1.7.0_04 the collectors are NotificationEmitters that never send a gc notification, 
+	 * so a count above 0 does not guarantee events)
+	 * @return number of collectors subscribed to (0 when the collectors are no NotificationEmitters)
+	 */
+	public int start(){
+		int subscribed = 0;
+		for(GarbageCollectorMXBean bean: ManagementFactory.getGarbageCollectorMXBeans()){
+			if(bean instanceof NotificationEmitter){
+				((NotificationEmitter) bean).addNotificationListener(this, null, null);
+				subscribed++;
+			}
+		}
+		return subscribed;
+	}
+
+	/**
+	 * unsubscribes from all collectors
+	 */
+	public void stop(){
+		for(GarbageCollectorMXBean bean: ManagementFactory.getGarbageCollectorMXBeans()){
+			if(bean instanceof NotificationEmitter){
+				try {
+					((NotificationEmitter) bean).removeNotificationListener(this);
+				} catch (ListenerNotFoundException e) {
+					log.debug("not subscribed to " + bean.getName());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param listener called for every collection
+	 */
+	public void addListener(final GcListener listener){
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param counter signalled for every collection (e.g. a handle of PeriodicSignalSampler)
+	 */
+	public void countIn(final SignalCounter counter){
+		counters.add(counter);
+	}
+
+	/**
+	 * @return recorder with the duration (in nanos, with millisecond precision) of the stop the world collections, 
+	 * the cycles of concurrent collectors are not recorded (see GcEvent.isPause)
+	 */
+	public LatencyRecorder getPauseRecorder(){
+		return pauses;
+	}
+
+	@Override
+	public void handleNotification(final Notification notification, final Object handback) {
+		if(!GC_NOTIFICATION.equals(notification.getType()) || !(notification.getUserData() instanceof CompositeData)){
+			return;
+		}
+		GcEvent event = toEvent((CompositeData) notification.getUserData());
+		if(event.isPause()){
+			pauses.record(TimeUnit.MILLISECONDS.toNanos(event.getDurationInMs()));
+		}
+		for(SignalCounter counter: counters){
+			counter.signal();
+		}
+		for(GcListener listener: listeners){
+			try{
+				listener.handleGc(event);
+			}catch(RuntimeException e){
+				log.error("gc listener failed", e);
+			}
+		}
+	}
+
+	/**
+	 * @param data the user data of the notification (GarbageCollectionNotificationInfo as CompositeData)
+	 * @return the event
+	 */
+	static GcEvent toEvent(final CompositeData data){
+		CompositeData info = (CompositeData) data.get("gcInfo");
+		return new GcEvent((String) data.get("gcName"), (String) data.get("gcAction"), (String) data.get("gcCause"),
+				(Long) info.get("id"), (Long) info.get("startTime"), (Long) info.get("duration"),
+				toUsages((TabularData) info.get("memoryUsageBeforeGc")), toUsages((TabularData) info.get("memoryUsageAfterGc")));
+	}
+
+	private static Map<String, MemoryUsage> toUsages(final TabularData table){
+		Map<String, MemoryUsage> usages = new HashMap<String, MemoryUsage>();
+		for(Object row: table.values()){
+			CompositeData entry = (CompositeData) row;
+			usages.put((String) entry.get("key"), MemoryUsage.from((CompositeData) entry.get("value")));
+		}
+		return usages;
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.benchmark;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * High dynamic range latency recorder with fixed memory.
+ * 
+ * Averages (like StopWatch.elapsedInMillis() over multiple runs) hide the tail latency, this recorder
+ * keeps the whole distribution so p50/p90/p99/p99.9/max can be reported.
+ * 
+ * The values are counted in log-linear buckets: values below 128 have their own bucket, above that every
+ * power of two is split into 64 linear sub-buckets. This gives a relative error below 1.6% for any value
+ * between 0 and Long.MAX_VALUE with 3712 buckets (about 30KB per recorder).
+ * 
+ * record() is lock-free (one atomic increment and a rarely failing compare-and-set for the max)
+ * and can be called from many threads at once.
+ * 
+ * LatencyRecorder recorder = new LatencyRecorder();
+ * ..
+ * long start = System.nanoTime();
+ * handle(request);
+ * recorder.record(System.nanoTime() - start);
+ * ..
+ * LatencySnapshot snapshot = recorder.snapshotAndReset();
+ * snapshot.getP99();
+ * 
+ * Snapshots of multiple recorders (e.g. one per node or stage) can be merged.
+ */
+public class LatencyRecorder {
+
+	/** number of bits used for the sub-buckets */
+	static final int SUB_BUCKET_BITS = 7;
+	/** values below this count have their own bucket */
+	static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	/** number of linear sub-buckets for every next power of two */
+	static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+	/** total number of buckets, enough for Long.MAX_VALUE */
+	static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (Long.SIZE - 1 - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong max = new AtomicLong(0);
+
+	/**
+	 * records one value, negative values are recorded as 0
+	 * @param nanos
+	 */
+	public void record(final long nanos){
+		long value = nanos < 0 ? 0 : nanos;
+		counts.incrementAndGet(indexFor(value));
+		long currentMax = max.get();
+		while(value > currentMax && !max.compareAndSet(currentMax, value)){
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * @return copy of the current counts, the recorder keeps counting
+	 */
+	public LatencySnapshot snapshot(){
+		long[] copy = new long[BUCKET_COUNT];
+		for(int i=0; i<BUCKET_COUNT; i++){
+			copy[i] = counts.get(i);
+		}
+		return new LatencySnapshot(copy, consistentMax(copy, max.get()));
+	}
+
+	/**
+	 * takes the counts and resets them, useful for reporting per interval.
+	 * Values recorded concurrently end up in this or in the next snapshot, never in neither.
+	 * @return the counts since the former reset
+	 */
+	public LatencySnapshot snapshotAndReset(){
+		long[] copy = new long[BUCKET_COUNT];
+		for(int i=0; i<BUCKET_COUNT; i++){
+			copy[i] = counts.getAndSet(i, 0);
+		}
+		return new LatencySnapshot(copy, consistentMax(copy, max.getAndSet(0)));
+	}
+
+	/**
+	 * the max is updated after the count, so a concurrent record can leave it in the other snapshot (or not yet set), 
+	 * it is kept within the highest bucket that has a count so the percentiles and mean are not clamped below it
+	 * @param copy counts of the snapshot
+	 * @param recordedMax
+	 * @return max of the snapshot
+	 */
+	static long consistentMax(final long[] copy, final long recordedMax){
+		for(int i = copy.length - 1; i >= 0; i--){
+			if(copy[i] > 0){
+				return Math.max(lowestValueAt(i), Math.min(highestValueAt(i), recordedMax));
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param value >= 0
+	 * @return the bucket that counts the value
+	 */
+	static int indexFor(final long value){
+		if(value < SUB_BUCKET_COUNT){
+			return (int) value;
+		}
+		int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		int shift = highestBit - (SUB_BUCKET_BITS - 1);
+		int subBucket = (int) (value >>> shift); // between HALF_SUB_BUCKET_COUNT and SUB_BUCKET_COUNT
+		return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + subBucket - HALF_SUB_BUCKET_COUNT;
+	}
+
+	/**
+	 * @param index
+	 * @return smallest value counted by the bucket
+	 */
+	static long lowestValueAt(final int index){
+		if(index < SUB_BUCKET_COUNT){
+			return index;
+		}
+		int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+		long subBucket = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+		return subBucket << shift;
+	}
+
+	/**
+	 * @param index
+	 * @return largest value counted by the bucket
+	 */
+	static long highestValueAt(final int index){
+		if(index == BUCKET_COUNT - 1){
+			return Long.MAX_VALUE;
+		}
+		return lowestValueAt(index + 1) - 1;
+	}
+}
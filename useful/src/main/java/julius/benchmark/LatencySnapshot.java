@@ -0,0 +1,182 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.benchmark;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import julius.validation.Assertions;
+
+/**
+ * Immutable copy of the counts of a LatencyRecorder
+ * 
+ * Percentiles are reported as the highest value of the bucket that contains the percentile
+ * (capped at the recorded max), so they never under-report the latency.
+ */
+public class LatencySnapshot {
+
+	private final long[] counts;
+	private final long max;
+	private final long totalCount;
+
+	/**
+	 * @param counts per bucket of LatencyRecorder (not copied)
+	 * @param max highest recorded value
+	 */
+	LatencySnapshot(final long[] counts, final long max){
+		this.counts = counts;
+		this.max = max;
+		long total = 0;
+		for(long count: counts){
+			total += count;
+		}
+		this.totalCount = total;
+	}
+
+	/**
+	 * @return empty snapshot, useful as start value for merging
+	 */
+	public static LatencySnapshot empty(){
+		return new LatencySnapshot(new long[LatencyRecorder.BUCKET_COUNT], 0);
+	}
+
+	/**
+	 * @param snapshots
+	 * @return one snapshot with the counts of all snapshots
+	 */
+	public static LatencySnapshot merge(final Collection<LatencySnapshot> snapshots){
+		long[] merged = new long[LatencyRecorder.BUCKET_COUNT];
+		long mergedMax = 0;
+		for(LatencySnapshot snapshot: snapshots){
+			for(int i=0; i<merged.length; i++){
+				merged[i] += snapshot.counts[i];
+			}
+			mergedMax = Math.max(mergedMax, snapshot.max);
+		}
+		return new LatencySnapshot(merged, mergedMax);
+	}
+
+	/**
+	 * @param other
+	 * @return new snapshot with the counts of this and other
+	 */
+	public LatencySnapshot merge(final LatencySnapshot other){
+		long[] merged = counts.clone();
+		for(int i=0; i<merged.length; i++){
+			merged[i] += other.counts[i];
+		}
+		return new LatencySnapshot(merged, Math.max(max, other.max));
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount(){
+		return totalCount;
+	}
+
+	/**
+	 * @return highest recorded value (exact), 0 if empty
+	 */
+	public long getMax(){
+		return max;
+	}
+
+	/**
+	 * @return approximate mean (based on the middle of the buckets), 0 if empty
+	 */
+	public double getMean(){
+		if(totalCount == 0){
+			return 0;
+		}
+		double sum = 0;
+		for(int i=0; i<counts.length; i++){
+			if(counts[i] > 0){
+				long low = LatencyRecorder.lowestValueAt(i);
+				double middle = low + (Math.min(LatencyRecorder.highestValueAt(i), max) - low) / 2.0;
+				sum += middle * counts[i];
+			}
+		}
+		return sum / totalCount;
+	}
+
+	/**
+	 * @param percentile between 0 and 100 (e.g. 99.9)
+	 * @return the value below which 'percentile' percent of the recorded values fall, 0 if empty
+	 */
+	public long getValueAtPercentile(final double percentile){
+		Assertions.argument.assertTrue(percentile >= 0 && percentile <= 100, "percentile should be between 0 and 100");
+		if(totalCount == 0){
+			return 0;
+		}
+		long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+		long seen = 0;
+		for(int i=0; i<counts.length; i++){
+			seen += counts[i];
+			if(seen >= countAtPercentile){
+				return Math.min(LatencyRecorder.highestValueAt(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return median
+	 */
+	public long getP50(){
+		return getValueAtPercentile(50);
+	}
+
+	/**
+	 * @return 90th percentile
+	 */
+	public long getP90(){
+		return getValueAtPercentile(90);
+	}
+
+	/**
+	 * @return 99th percentile
+	 */
+	public long getP99(){
+		return getValueAtPercentile(99);
+	}
+
+	/**
+	 * @return 99.9th percentile
+	 */
+	public long getP999(){
+		return getValueAtPercentile(99.9);
+	}
+
+	/**
+	 * @param unit in which the values are presented (the values are recorded in nanos)
+	 * @return one line summary
+	 */
+	public String getReport(final TimeUnit unit){
+		return "count:" + totalCount 
+				+ "\tp50:" + unit.convert(getP50(), TimeUnit.NANOSECONDS)
+				+ "\tp90:" + unit.convert(getP90(), TimeUnit.NANOSECONDS)
+				+ "\tp99:" + unit.convert(getP99(), TimeUnit.NANOSECONDS)
+				+ "\tp99.9:" + unit.convert(getP999(), TimeUnit.NANOSECONDS)
+				+ "\tmax:" + unit.convert(max, TimeUnit.NANOSECONDS)
+				+ " (" + unit.toString().toLowerCase() + ")";
+	}
+
+	@Override
+	public String toString() {
+		return getReport(TimeUnit.NANOSECONDS);
+	}
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import julius.lambda.Operation;
+import julius.utilities.DaemonThreadFactory;
+import julius.validation.Assertions;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Local load driver to find the saturation point of a service (or a stub of it) before it reaches production.
+ * 
+ * - openLoop: calls the operation at a target rate, independent of how fast it responds (like real users)
+ * - closedLoop: N workers call the operation as fast as it responds (like a connection pool)
+ * 
+ * The open loop records the latency from the intended start time of every call (start + i / rate), not from the moment
+ * a worker got around to it. When the service stalls, the calls that should have been made during the stall are
+ * counted with their full waiting time, instead of being silently skipped (coordinated omission).
+ * 
+ * LoadGenerator.Result result = new LoadGenerator().openLoop(client, request, 500, 30000, 64);
+ * result.getLatency().getP99();
+ * 
+ * Exceptions thrown by the operation are counted as errors (and their latency is recorded as well).
+ */
+public class LoadGenerator {
+
+	private static Logger log = Logger.getLogger(LoadGenerator.class);
+
+	/**
+	 * @param operation to call
+	 * @param input passed to every call
+	 * @param ratePerSecond target number of calls per second
+	 * @param durationInMs duration of the run
+	 * @param maxConcurrency number of worker threads, when they are all busy the next calls are late
+	 * @return latency from the intended start time and the service time of the calls
+	 */
+	public <T,U> Result openLoop(final Operation<T,U> operation, final T input, final int ratePerSecond, final long durationInMs, final int maxConcurrency){
+		Assertions.argument.assertTrue(ratePerSecond > 0, "the rate should be > 0");
+		final long intervalInNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+		final long calls = durationInMs * ratePerSecond / 1000;
+		final AtomicLong sequence = new AtomicLong();
+		return run(maxConcurrency, durationInMs, new Worker<T,U>(operation, input){
+			@Override
+			boolean next(final Result result, final long start) {
+				long number = sequence.getAndIncrement();
+				if(number >= calls){
+					return false;
+				}
+				long intended = start + number * intervalInNanos;
+				long wait = intended - System.nanoTime();
+				if(wait > 0){
+					LockSupport.parkNanos(wait);
+				}
+				call(result, intended);
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * @param operation to call
+	 * @param input passed to every call
+	 * @param workers number of threads that call the operation back to back
+	 * @param durationInMs duration of the run
+	 * @return latency (equal to the service time, a closed loop has no intended start times) of the calls
+	 */
+	public <T,U> Result closedLoop(final Operation<T,U> operation, final T input, final int workers, final long durationInMs){
+		final long durationInNanos = TimeUnit.MILLISECONDS.toNanos(durationInMs);
+		return run(workers, durationInMs, new Worker<T,U>(operation, input){
+			@Override
+			boolean next(final Result result, final long start) {
+				long now = System.nanoTime();
+				if(now - start >= durationInNanos){
+					return false;
+				}
+				call(result, now);
+				return true;
+			}
+		});
+	}
+
+	private Result run(final int threads, final long durationInMs, final Worker<?,?> worker){
+		Assertions.argument.assertTrue(threads > 0, "the number of workers should be > 0");
+		Assertions.argument.assertTrue(durationInMs > 0, "the duration should be > 0");
+		final Result result = new Result();
+		final CountDownLatch done = new CountDownLatch(threads);
+		final long start = System.nanoTime();
+		DaemonThreadFactory factory = new DaemonThreadFactory("julius-load");
+		for(int i=0; i<threads; i++){
+			factory.newThread(new Runnable() {
+				@Override
+				public void run() {
+					try{
+						while(worker.next(result, start)){
+							// next call
+						}
+					}finally{
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			log.error("interrupted while waiting for the load to finish", e);
+			Thread.currentThread().interrupt();
+		}
+		result.elapsedInNanos = System.nanoTime() - start;
+		return result;
+	}
+
+	/**
+	 * the work of one worker thread
+	 */
+	private abstract static class Worker<T,U> {
+
+		private final Operation<T,U> operation;
+		private final T input;
+
+		Worker(final Operation<T,U> operation, final T input){
+			this.operation = operation;
+			this.input = input;
+		}
+
+		/**
+		 * @return false when the run is over
+		 */
+		abstract boolean next(Result result, long start);
+
+		void call(final Result result, final long intended){
+			long actual = System.nanoTime();
+			try{
+				operation.apply(input);
+			}catch(RuntimeException e){
+				result.errors.incrementAndGet();
+			}
+			long end = System.nanoTime();
+			result.latency.record(end - intended);
+			result.serviceTime.record(end - actual);
+			result.completed.incrementAndGet();
+		}
+	}
+
+	/**
+	 * outcome of a run
+	 */
+	public static class Result {
+
+		private final LatencyRecorder latency = new LatencyRecorder();
+		private final LatencyRecorder serviceTime = new LatencyRecorder();
+		private final AtomicLong completed = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+		private volatile long elapsedInNanos;
+
+		/**
+		 * @return latency from the intended start time (corrected for coordinated omission) in nanos
+		 */
+		public LatencySnapshot getLatency(){
+			return latency.snapshot();
+		}
+
+		/**
+		 * @return time spent within the operation in nanos
+		 */
+		public LatencySnapshot getServiceTime(){
+			return serviceTime.snapshot();
+		}
+
+		/**
+		 * @return number of calls (including errors)
+		 */
+		public long getCompleted(){
+			return completed.get();
+		}
+
+		/**
+		 * @return number of calls that threw an exception
+		 */
+		public long getErrors(){
+			return errors.get();
+		}
+
+		/**
+		 * @return achieved calls per second
+		 */
+		public double getThroughput(){
+			return completed.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedInNanos;
+		}
+
+		@Override
+		public String toString() {
+			return "completed:" + getCompleted() + "\terrors:" + getErrors() + "\tthroughput:" + (long) getThroughput() + "/s" 
+					+ "\nlatency:\t" + getLatency().getReport(TimeUnit.MICROSECONDS)
+					+ "\nservice:\t" + getServiceTime().getReport(TimeUnit.MICROSECONDS);
+		}
+	}
+}
@@ -25,6 +25,8 @@ import julius.utilities.Sleep;
  * 
  * KEEP IN MIND THAT USING THIS CLASS DOES INTERFERE WITH THE GARBAGE COLLECTOR AND MIGHT HURT PERFORMANCE
  * DON'T USE IN PRODUCTION WHERE PERFORMANCE IS IMPORTANT
+ * 
+ * (except getAllocatedBytesOfCurrentThread, which reads a counter and does not touch the GC, see AllocationProbe)
  */
 @Experimental("obtrusive, only use in debug environment")
 public class MemoryHelper {
@@ -59,6 +61,39 @@ public class MemoryHelper {
 		return (totalBytes - freeWithinTotalBytes) / Constants.BYTES_IN_KILOBYTE / Constants.KILOBYTES_IN_MEGABYTE ; // bytes => kilobytes => megabytes		
 	}
 	
+	/**
+	 * does not call the GC, safe to use under load
+	 * @return the number of bytes the current thread allocated since it was started (0 if the JVM does not support it)
+	 */
+	public long getAllocatedBytesOfCurrentThread() {
+		return AllocationProbe.getAllocatedBytesOfCurrentThread();
+	}
+
+	/**
+	 * Estimates the footprint of an object graph (for example a cache or MultiHashMap) by walking all non static fields,
+	 * using the object layout of the current JVM (compressed oops aware). Objects reachable from outside the graph are
+	 * counted as well, so it is the retained size only when the graph is not shared.
+	 * 
+	 * does not call the GC, but it walks the whole graph so it is not meant for hot paths.
+	 * On java 9+ the internals of JDK classes (like the table of a HashMap) are only counted with 
+	 * --add-opens java.base/java.util=ALL-UNNAMED (and likewise for other packages), otherwise Maps, Collections and Strings
+	 * are estimated through their public API and other JDK objects are counted shallow (see DeepSize.getOpaqueClasses()).
+	 * 
+	 * @param root
+	 * @return the estimated bytes and a breakdown per class
+	 */
+	public DeepSize deepSizeOf(final Object root) {
+		return new ObjectSizeEstimator().deepSizeOf(root);
+	}
+
+	/**
+	 * @param object
+	 * @return the estimated bytes of the object itself, without the objects it references (0 for null)
+	 */
+	public long shallowSizeOf(final Object object) {
+		return new ObjectSizeEstimator().shallowSizeOf(object);
+	}
+
 	/**
 	 * suggests the VM to clean up memory
 	 */
@@ -0,0 +1,36 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.lang.management.MemoryUsage;
+
+import julius.benchmark.MemoryPressureMonitor.Severity;
+
+/**
+ * callback for memory pools that cross a threshold of MemoryPressureMonitor
+ */
+public interface MemoryPressureListener {
+
+	/**
+	 * called on the JMX notification thread, should return quickly (e.g. flush a cache)
+	 * @param severity 
+	 * @param pool name of the memory pool (e.g. "PS Old Gen" or "G1 Old Gen")
+	 * @param usage usage of the pool when the threshold was crossed
+	 */
+	void handlePressure(Severity severity, String pool, MemoryUsage usage);
+
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import static julius.validation.Assertions.argument;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import julius.lazy.CachingLazyLoaderProxy;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Warns listeners when the heap fills up, so caches can shed memory before the JVM has to do a full GC (or runs out of
+ * memory) instead of after.
+ * 
+ * It sets the usage threshold of every heap pool that supports it (typically the old generation) to the warning
+ * fraction of its maximum and the collection usage threshold (the usage directly after a GC) to the critical fraction.
+ * A pool above the warning fraction may still be cleaned by the next GC, a pool that is still above the critical fraction
+ * after a GC is not. 
+ * 
+ * MemoryPressureMonitor monitor = new MemoryPressureMonitor(0.7, 0.9);
+ * monitor.flushOn(Severity.WARNING, cache);
+ * monitor.start();
+ * 
+ * The JVM sends a notification only when the threshold is crossed, it is sent again after the usage dropped below 
+ * the threshold. The thresholds are global to the JVM, so only one monitor should be started.
+ */
+public class MemoryPressureMonitor implements NotificationListener {
+
+	/**
+	 * how full a memory pool is
+	 */
+	public enum Severity { 
+		/** above the warning fraction, a GC might still free enough memory */
+		WARNING, 
+		/** above the critical fraction, shed memory now */
+		CRITICAL 
+	}
+
+	private static Logger log = Logger.getLogger(MemoryPressureMonitor.class);
+
+	private final double warning;
+	private final double critical;
+	private final List<MemoryPressureListener> listeners = new CopyOnWriteArrayList<MemoryPressureListener>();
+
+	/**
+	 * @param warning fraction of the maximum of a pool (e.g. 0.7)
+	 * @param critical fraction of the maximum of a pool (e.g. 0.9)
+	 */
+	public MemoryPressureMonitor(final double warning, final double critical){
+		argument.assertTrue(warning > 0 && warning <= critical && critical < 1, "0 < warning <= critical < 1 expected");
+		this.warning = warning;
+		this.critical = critical;
+	}
+
+	/**
+	 * sets the thresholds of the heap pools and subscribes to the notifications
+	 * @return number of pools monitored (0 when no heap pool supports thresholds)
+	 */
+	public int start(){
+		int monitored = 0;
+		for(MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()){
+			long max = pool.getUsage().getMax();
+			if(pool.getType() == MemoryType.HEAP && max > 0){
+				if(pool.isUsageThresholdSupported()){
+					pool.setUsageThreshold((long) (max * warning));
+					monitored++;
+				}
+				if(pool.isCollectionUsageThresholdSupported()){
+					pool.setCollectionUsageThreshold((long) (max * critical));
+				}
+			}
+		}
+		((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+		return monitored;
+	}
+
+	/**
+	 * unsubscribes and disables the thresholds
+	 */
+	public void stop(){
+		try {
+			((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+		} catch (ListenerNotFoundException e) {
+			log.debug("not subscribed");
+		}
+		for(MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()){
+				pool.setUsageThreshold(0);
+			}
+			if(pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()){
+				pool.setCollectionUsageThreshold(0);
+			}
+		}
+	}
+
+	/**
+	 * @param listener called when a pool crosses a threshold
+	 */
+	public void addListener(final MemoryPressureListener listener){
+		listeners.add(listener);
+	}
+
+	/**
+	 * flushes the cache when the pressure reaches the minimum severity
+	 * @param minimum 
+	 * @param cache
+	 */
+	public void flushOn(final Severity minimum, final CachingLazyLoaderProxy<?, ?> cache){
+		argument.assertNotNull(minimum, "minimum");
+		argument.assertNotNull(cache, "cache");
+		addListener(new MemoryPressureListener() {
+			@Override
+			public void handlePressure(final Severity severity, final String pool, final MemoryUsage usage) {
+				if(severity.compareTo(minimum) >= 0){
+					cache.flush();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void handleNotification(final Notification notification, final Object handback) {
+		boolean afterGc = MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType());
+		if(!(afterGc || MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(notification.getType())) 
+				|| !(notification.getUserData() instanceof CompositeData)){
+			return;
+		}
+		MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+		notifyListeners(info.getPoolName(), info.getUsage(), afterGc);
+	}
+
+	/**
+	 * @param usage
+	 * @param afterGc whether the usage is measured directly after a collection
+	 * @return severity of the usage
+	 */
+	Severity severityOf(final MemoryUsage usage, final boolean afterGc){
+		boolean aboveCritical = usage.getMax() > 0 && usage.getUsed() >= usage.getMax() * critical;
+		return afterGc || aboveCritical ? Severity.CRITICAL : Severity.WARNING;
+	}
+
+	void notifyListeners(final String pool, final MemoryUsage usage, final boolean afterGc){
+		Severity severity = severityOf(usage, afterGc);
+		log.warn(severity + " memory pressure on " + pool + ": " + usage);
+		for(MemoryPressureListener listener: listeners){
+			try{
+				listener.handlePressure(severity, pool, usage);
+			}catch(RuntimeException e){
+				log.error("memory pressure listener failed", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,378 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.util.Arrays;
+
+import julius.lambda.Operation;
+import julius.validation.Assertions;
+
+/**
+ * Small benchmark harness for canary benchmarks inside a running (staging) JVM on its real data, where a separate
+ * JMH fork is not practical. It is far less rigorous than JMH (no forks, no blackholes, no protection against
+ * constant folding), so compare results of the same JVM only.
+ * 
+ * MicroBenchmark benchmark = new MicroBenchmark(5, 30, 1000, 0.1);
+ * MicroBenchmark.Result result = benchmark.run(parser, input);
+ * MicroBenchmark.Comparison comparison = benchmark.compare(oldParser, newParser, input);
+ * if(comparison.isSignificant() && comparison.getRatio() > 1.1){
+ * 		log.warn("regression " + comparison);
+ * }
+ * 
+ * Every iteration calls the operation 'batch' times, timed with a NanoStopWatch. The slowest and fastest iterations
+ * (outliers like GC pauses) are trimmed before the statistics are calculated. compare() alternates the iterations of
+ * A and B so drift (JIT, other load) affects both, and applies Welch's t-test to the trimmed samples.
+ */
+public class MicroBenchmark {
+
+	/** p-value below which a difference is considered significant */
+	public static final double SIGNIFICANCE_LEVEL = 0.05;
+
+	private final int warmupIterations;
+	private final int iterations;
+	private final int batch;
+	private final double trim;
+	private final NanoStopWatch stopWatch = new NanoStopWatch();
+	/** results are folded in here so the JIT cannot remove the calls */
+	private volatile int sink;
+
+	/**
+	 * @param warmupIterations number of iterations that are not measured
+	 * @param iterations number of measured iterations (> 2)
+	 * @param batch number of calls per iteration (> 0)
+	 * @param trim fraction (0 - 0.5) of the iterations that is dropped on both the slow and the fast side
+	 */
+	public MicroBenchmark(final int warmupIterations, final int iterations, final int batch, final double trim){
+		Assertions.argument.assertTrue(warmupIterations >= 0, "warmupIterations should be >= 0");
+		Assertions.argument.assertTrue(batch > 0, "batch should be > 0");
+		Assertions.argument.assertTrue(trim >= 0 && trim < 0.5, "trim should be between 0 and 0.5");
+		Assertions.argument.assertTrue(iterations - 2 * (int) (iterations * trim) > 2, "too few iterations are left after trimming");
+		this.warmupIterations = warmupIterations;
+		this.iterations = iterations;
+		this.batch = batch;
+		this.trim = trim;
+	}
+
+	/**
+	 * @param operation to measure
+	 * @param input passed to every call
+	 * @return statistics of the time per call
+	 */
+	public <T,U> Result run(final Operation<T,U> operation, final T input){
+		for(int i=0; i<warmupIterations; i++){
+			measure(operation, input);
+		}
+		double[] samples = new double[iterations];
+		for(int i=0; i<iterations; i++){
+			samples[i] = measure(operation, input);
+		}
+		return new Result(trim(samples));
+	}
+
+	/**
+	 * measures A and B in alternating iterations
+	 * @param a baseline
+	 * @param b candidate
+	 * @param input passed to every call
+	 * @return the statistics of both and the significance of the difference
+	 */
+	public <T,U,V> Comparison compare(final Operation<T,U> a, final Operation<T,V> b, final T input){
+		for(int i=0; i<warmupIterations; i++){
+			measure(a, input);
+			measure(b, input);
+		}
+		double[] samplesA = new double[iterations];
+		double[] samplesB = new double[iterations];
+		for(int i=0; i<iterations; i++){
+			samplesA[i] = measure(a, input);
+			samplesB[i] = measure(b, input);
+		}
+		return new Comparison(new Result(trim(samplesA)), new Result(trim(samplesB)));
+	}
+
+	/**
+	 * @return nanos per call
+	 */
+	private <T,U> double measure(final Operation<T,U> operation, final T input){
+		int hash = 0;
+		stopWatch.reset();
+		stopWatch.start();
+		for(int i=0; i<batch; i++){
+			U result = operation.apply(input);
+			hash += result == null ? 0 : System.identityHashCode(result);
+		}
+		long elapsed = stopWatch.stop();
+		sink ^= hash;
+		return (double) elapsed / batch;
+	}
+
+	private double[] trim(final double[] samples){
+		double[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		int drop = (int) (sorted.length * trim);
+		return Arrays.copyOfRange(sorted, drop, sorted.length - drop);
+	}
+
+	/**
+	 * statistics of the (trimmed) iterations in nanos per call
+	 */
+	public static class Result {
+
+		private final double[] samples;
+		private final double mean;
+		private final double variance;
+
+		Result(final double[] sortedSamples){
+			this.samples = sortedSamples;
+			double sum = 0;
+			for(double sample: samples){
+				sum += sample;
+			}
+			this.mean = sum / samples.length;
+			double squares = 0;
+			for(double sample: samples){
+				squares += (sample - mean) * (sample - mean);
+			}
+			this.variance = squares / (samples.length - 1);
+		}
+
+		/**
+		 * @return number of iterations after trimming
+		 */
+		public int getIterations(){
+			return samples.length;
+		}
+
+		/**
+		 * @return average nanos per call
+		 */
+		public double getMean(){
+			return mean;
+		}
+
+		/**
+		 * @return sample variance of the nanos per call
+		 */
+		public double getVariance(){
+			return variance;
+		}
+
+		/**
+		 * @return sample standard deviation of the nanos per call
+		 */
+		public double getStandardDeviation(){
+			return Math.sqrt(variance);
+		}
+
+		/**
+		 * @return median nanos per call
+		 */
+		public double getMedian(){
+			int middle = samples.length / 2;
+			return samples.length % 2 == 1 ? samples[middle] : (samples[middle - 1] + samples[middle]) / 2;
+		}
+
+		/**
+		 * @return fastest (trimmed) iteration
+		 */
+		public double getMin(){
+			return samples[0];
+		}
+
+		/**
+		 * @return slowest (trimmed) iteration
+		 */
+		public double getMax(){
+			return samples[samples.length - 1];
+		}
+
+		@Override
+		public String toString() {
+			return String.format("mean:%.1f ns\tstddev:%.1f\tmedian:%.1f\tmin:%.1f\tmax:%.1f\tn:%d", 
+					mean, getStandardDeviation(), getMedian(), getMin(), getMax(), samples.length);
+		}
+	}
+
+	/**
+	 * result of an A/B comparison with Welch's t-test
+	 */
+	public static class Comparison {
+
+		private final Result a;
+		private final Result b;
+		private final double t;
+		private final double degreesOfFreedom;
+		private final double pValue;
+
+		Comparison(final Result a, final Result b){
+			this.a = a;
+			this.b = b;
+			double varA = a.getVariance() / a.getIterations();
+			double varB = b.getVariance() / b.getIterations();
+			double error = varA + varB;
+			if(error == 0){
+				this.t = a.getMean() == b.getMean() ? 0 : Double.POSITIVE_INFINITY;
+				this.degreesOfFreedom = a.getIterations() + b.getIterations() - 2;
+				this.pValue = a.getMean() == b.getMean() ? 1 : 0;
+			}else{
+				this.t = (b.getMean() - a.getMean()) / Math.sqrt(error);
+				this.degreesOfFreedom = error * error 
+						/ (varA * varA / (a.getIterations() - 1) + varB * varB / (b.getIterations() - 1));
+				this.pValue = Statistics.studentTTwoTailed(t, degreesOfFreedom);
+			}
+		}
+
+		/**
+		 * @return result of the baseline
+		 */
+		public Result getA() {
+			return a;
+		}
+
+		/**
+		 * @return result of the candidate
+		 */
+		public Result getB() {
+			return b;
+		}
+
+		/**
+		 * @return mean of B / mean of A (> 1 means B is slower)
+		 */
+		public double getRatio(){
+			return b.getMean() / a.getMean();
+		}
+
+		/**
+		 * @return Welch's t statistic (positive means B is slower)
+		 */
+		public double getT() {
+			return t;
+		}
+
+		/**
+		 * @return Welch-Satterthwaite degrees of freedom
+		 */
+		public double getDegreesOfFreedom() {
+			return degreesOfFreedom;
+		}
+
+		/**
+		 * @return two tailed probability that the difference is caused by chance
+		 */
+		public double getPValue() {
+			return pValue;
+		}
+
+		/**
+		 * @return true when the p-value is below SIGNIFICANCE_LEVEL
+		 */
+		public boolean isSignificant(){
+			return pValue < SIGNIFICANCE_LEVEL;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("A: %s%nB: %s%nB/A:%.3f\tt:%.2f\tp:%.4f\t%s", a, b, getRatio(), t, pValue,
+					isSignificant() ? "significant" : "not significant");
+		}
+	}
+
+	/**
+	 * the distribution functions needed for the t-test
+	 */
+	static final class Statistics {
+
+		private static final int MAX_ITERATIONS = 300;
+		private static final double EPSILON = 1e-14;
+		private static final double[] LANCZOS = {
+			676.5203681218851, -1259.1392167224028, 771.32342877765313, -176.61502916214059,
+			12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7};
+
+		private Statistics(){
+		}
+
+		/**
+		 * @param t statistic
+		 * @param degreesOfFreedom
+		 * @return P(|T| > |t|) for a Student t distribution
+		 */
+		static double studentTTwoTailed(final double t, final double degreesOfFreedom){
+			return regularizedIncompleteBeta(degreesOfFreedom / (degreesOfFreedom + t * t), degreesOfFreedom / 2, 0.5);
+		}
+
+		/**
+		 * @return I_x(a, b), using the continued fraction of Numerical Recipes (6.4)
+		 */
+		static double regularizedIncompleteBeta(final double x, final double a, final double b){
+			if(x <= 0){
+				return 0;
+			}
+			if(x >= 1){
+				return 1;
+			}
+			double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log(1 - x));
+			if(x < (a + 1) / (a + b + 2)){
+				return front * betaContinuedFraction(x, a, b) / a;
+			}
+			return 1 - front * betaContinuedFraction(1 - x, b, a) / b;
+		}
+
+		private static double betaContinuedFraction(final double x, final double a, final double b){
+			double c = 1;
+			double d = nonZero(1 - (a + b) * x / (a + 1));
+			d = 1 / d;
+			double h = d;
+			for(int m = 1; m <= MAX_ITERATIONS; m++){
+				int m2 = 2 * m;
+				double aa = m * (b - m) * x / ((a + m2 - 1) * (a + m2));
+				d = 1 / nonZero(1 + aa * d);
+				c = nonZero(1 + aa / c);
+				h *= d * c;
+				aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1));
+				d = 1 / nonZero(1 + aa * d);
+				c = nonZero(1 + aa / c);
+				double delta = d * c;
+				h *= delta;
+				if(Math.abs(delta - 1) < EPSILON){
+					break;
+				}
+			}
+			return h;
+		}
+
+		private static double nonZero(final double value){
+			return Math.abs(value) < Double.MIN_NORMAL ? Double.MIN_NORMAL : value;
+		}
+
+		/**
+		 * @return ln(gamma(x)) for x > 0, Lanczos approximation (g=7)
+		 */
+		static double logGamma(final double x){
+			if(x < 0.5){
+				return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1 - x);
+			}
+			double z = x - 1;
+			double sum = 0.99999999999980993;
+			for(int i=0; i<LANCZOS.length; i++){
+				sum += LANCZOS[i] / (z + i + 1);
+			}
+			double t = z + LANCZOS.length - 0.5;
+			return 0.5 * Math.log(2 * Math.PI) + (z + 0.5) * Math.log(t) - t + Math.log(sum);
+		}
+	}
+}
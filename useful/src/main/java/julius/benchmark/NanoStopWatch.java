@@ -0,0 +1,251 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.benchmark;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import julius.validation.Assertions;
+
+/**
+ * stopwatch based on System.nanoTime() with named laps and split times
+ * 
+ * the millisecond StopWatch reads 0 for everything that takes less then a millisecond,
+ * this one is meant for timing request stages that only take microseconds.
+ * 
+ * NanoStopWatch sw = new NanoStopWatch();
+ * for(Request r: requests){
+ * 		sw.start();
+ * 		parse(r);
+ * 		sw.lap("parse");
+ * 		handle(r);
+ * 		sw.lap("handle");
+ * 		sw.stop();
+ * }
+ * sw.getLap("parse").getMeanNanos();
+ * 
+ * laps with the same name are accumulated (count, total, min, max, mean). Only the first lap
+ * for a name creates its Lap object, after that start/lap/split/stop do not allocate.
+ * 
+ * Like StopWatch it is not threadsafe, use one instance per thread.
+ */
+public class NanoStopWatch {
+
+	private final Map<String, Lap> laps = new LinkedHashMap<String, Lap>();
+	private boolean running;
+	private boolean used;
+	private long start;
+	private long lastLap;
+	private long elapsed;
+
+	/**
+	 * Constructor it is without auto-start
+	 */
+	public NanoStopWatch(){
+		reset();
+	}
+
+	/**
+	 * resets the stopwatch and forgets all laps
+	 */
+	public final void reset() {
+		laps.clear();
+		running = false;
+		used = false;
+		start = 0;
+		lastLap = 0;
+		elapsed = 0;
+	}
+
+	/**
+	 * starts the timing (or resumes), the next lap is measured from here
+	 */
+	public void start(){
+		start = System.nanoTime();
+		lastLap = start;
+		running = true;
+		used = true;
+	}
+
+	/**
+	 * records the time since the former lap (or start) under 'name'
+	 * @param name of the lap, laps with the same name are accumulated
+	 * @return duration of this lap in nanos
+	 */
+	public long lap(final String name){
+		long now = System.nanoTime();
+		Assertions.state.assertTrue(running, "first call start, then lap");
+		long duration = now - lastLap;
+		lastLap = now;
+		Lap lap = laps.get(name);
+		if(lap == null){
+			lap = new Lap(name);
+			laps.put(name, lap);
+		}
+		lap.record(duration);
+		return duration;
+	}
+
+	/**
+	 * split time, does not stop the watch nor start a new lap
+	 * @return time between 'start' and 'now' (+ elapsed in case the timer was resumed)
+	 */
+	public long splitInNanos(){
+		Assertions.state.assertTrue(running, "first call start, then split");
+		return System.nanoTime() - start + elapsed;
+	}
+
+	/**
+	 * stop or pause the timing
+	 * @return the accumulated time between start and stop in nanos
+	 */
+	public long stop(){
+		long now = System.nanoTime();
+		Assertions.state.assertTrue(running, "first call start, then stop");
+		elapsed += now - start;
+		running = false;
+		return elapsed;
+	}
+
+	/**
+	 * call after stop, unlike StopWatch it also works for sub-millisecond timings
+	 * @return the accumulated time in nanos
+	 */
+	public long elapsedInNanos(){
+		Assertions.state.assertTrue(used && !running, "first call 'start', then 'stop', then 'elapsed'");
+		return elapsed;
+	}
+
+	/**
+	 * @return the accumulated time in micros (truncated)
+	 */
+	public long elapsedInMicros(){
+		return TimeUnit.NANOSECONDS.toMicros(elapsedInNanos());
+	}
+
+	/**
+	 * @return the accumulated time in millis (truncated)
+	 */
+	public long elapsedInMillis(){
+		return TimeUnit.NANOSECONDS.toMillis(elapsedInNanos());
+	}
+
+	/**
+	 * @param name
+	 * @return the accumulated lap or null if no lap with that name was recorded
+	 */
+	public Lap getLap(final String name){
+		return laps.get(name);
+	}
+
+	/**
+	 * @return unmodifiable view of the laps in order of first occurrence
+	 */
+	public Map<String, Lap> getLaps(){
+		return Collections.unmodifiableMap(laps);
+	}
+
+	/**
+	 * @return multiline summary of all laps
+	 */
+	public String getReport(){
+		StringBuilder builder = new StringBuilder();
+		for(Lap lap: laps.values()){
+			builder.append(lap);
+			builder.append("\n");
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * accumulated statistics of all laps with the same name
+	 */
+	public static class Lap {
+
+		private final String name;
+		private long count;
+		private long total;
+		private long min = Long.MAX_VALUE;
+		private long max = Long.MIN_VALUE;
+
+		/**
+		 * @param name
+		 */
+		Lap(final String name){
+			this.name = name;
+		}
+
+		void record(final long nanos){
+			count++;
+			total += nanos;
+			if(nanos < min){
+				min = nanos;
+			}
+			if(nanos > max){
+				max = nanos;
+			}
+		}
+
+		/**
+		 * @return name of the lap
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return number of times this lap was recorded
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return sum of all recordings
+		 */
+		public long getTotalNanos() {
+			return total;
+		}
+
+		/**
+		 * @return shortest recording
+		 */
+		public long getMinNanos() {
+			return min;
+		}
+
+		/**
+		 * @return longest recording
+		 */
+		public long getMaxNanos() {
+			return max;
+		}
+
+		/**
+		 * @return average of all recordings
+		 */
+		public double getMeanNanos() {
+			return (double) total / count;
+		}
+
+		@Override
+		public String toString() {
+			return name + "\tcount:" + count + "\tmin:" + min + "\tmax:" + max + "\tmean:" + (long) getMeanNanos() + " (ns)";
+		}
+	}
+}
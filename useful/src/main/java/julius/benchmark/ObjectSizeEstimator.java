@@ -0,0 +1,324 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Estimates the size of object graphs with the HotSpot object layout rules:
+ * 
+ * - object header of 12 bytes (64 bit with compressed class pointers), 16 bytes (64 bit without) or 8 bytes (32 bit)
+ * - references of 4 bytes with compressed oops, otherwise the pointer size
+ * - arrays have an extra 4 bytes length field
+ * - all objects are aligned on 8 bytes
+ * 
+ * Field gaps caused by the field packing of the JVM are ignored, so it is an estimation (typically within a few percent).
+ * Static fields and Class objects are not counted.
+ * 
+ * On java 9+ the fields of JDK classes can only be read with --add-opens. Without it such an object is 'opaque':
+ * Maps and Collections are walked through their public API (the entries, buckets and backing arrays are estimated
+ * like a HashMap or ArrayList), Strings are sized from their characters, other objects are counted shallow.
+ * The opaque classes are reported in DeepSize.getOpaqueClasses().
+ */
+class ObjectSizeEstimator {
+
+	private static final int ALIGNMENT = 8;
+	private static final int ARRAY_LENGTH = 4;
+	private static final int COMPRESSED_REFERENCE = 4;
+	private static final int HEADER_32 = 8;
+	private static final int HEADER_64_COMPRESSED = 12;
+	private static final int HEADER_64 = 16;
+	private static final int POINTER_64 = 8;
+	private static final int INT = 4;
+	private static final int ENTRY_REFERENCES = 3; // key, value, next
+	private static final int MIN_TABLE = 16;
+	private static final double LOAD_FACTOR = 0.75;
+	private static final int LATIN1 = 0xFF;
+
+	private static Logger log = Logger.getLogger(ObjectSizeEstimator.class);
+
+	private final int header;
+	private final int reference;
+	private final Map<Class<?>, ClassLayout> layouts = new HashMap<Class<?>, ClassLayout>();
+
+	/**
+	 * detects the layout of the current JVM
+	 */
+	ObjectSizeEstimator(){
+		boolean is64 = !"32".equals(System.getProperty("sun.arch.data.model"));
+		boolean compressedOops = is64 && isEnabled("UseCompressedOops", true);
+		boolean compressedClass = is64 && isEnabled("UseCompressedClassPointers", compressedOops);
+		this.reference = !is64 ? HEADER_32 / 2 : (compressedOops ? COMPRESSED_REFERENCE : POINTER_64);
+		this.header = !is64 ? HEADER_32 : (compressedClass ? HEADER_64_COMPRESSED : HEADER_64);
+	}
+
+	/**
+	 * @param header size of the object header
+	 * @param reference size of a reference
+	 */
+	ObjectSizeEstimator(final int header, final int reference){
+		this.header = header;
+		this.reference = reference;
+	}
+
+	/**
+	 * @param root
+	 * @return the size of root and all objects reachable through its (non static) fields
+	 */
+	DeepSize deepSizeOf(final Object root){
+		DeepSize result = new DeepSize();
+		Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		Deque<Object> todo = new ArrayDeque<Object>();
+		if(root != null){
+			todo.push(root);
+		}
+		while(!todo.isEmpty()){
+			Object current = todo.pop();
+			if(current instanceof Class || !visited.add(current)){
+				continue;
+			}
+			Class<?> type = current.getClass();
+			if(type.isArray()){
+				result.register(type, arraySize(type.getComponentType(), Array.getLength(current)));
+				if(!type.getComponentType().isPrimitive()){
+					for(Object element: (Object[]) current){
+						if(element != null){
+							todo.push(element);
+						}
+					}
+				}
+			}else{
+				ClassLayout layout = layoutOf(type);
+				result.register(type, layout.size);
+				for(Field field: layout.references){
+					Object value = get(field, current);
+					if(value != null){
+						todo.push(value);
+					}
+				}
+				if(layout.opaque){
+					result.registerOpaque(type);
+					walkPublic(current, result, todo);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * walks an object of which the fields cannot be read through its public API and estimates its internals
+	 */
+	private void walkPublic(final Object current, final DeepSize result, final Deque<Object> todo){
+		try{
+			if(current instanceof String){
+				result.addBytes(current.getClass(), stringValueSize((String) current));
+			}else if(current instanceof Map){
+				Map<?, ?> map = (Map<?, ?>) current;
+				for(Map.Entry<?, ?> entry: map.entrySet()){
+					pushIfNotNull(todo, entry.getKey());
+					pushIfNotNull(todo, entry.getValue());
+				}
+				result.addBytes(current.getClass(), hashTableSize(map.size()));
+			}else if(current instanceof Collection){
+				Collection<?> collection = (Collection<?>) current;
+				for(Object element: collection){
+					pushIfNotNull(todo, element);
+				}
+				long internals = current instanceof Set ? hashTableSize(collection.size()) : arraySize(Object.class, collection.size());
+				result.addBytes(current.getClass(), internals);
+			}
+		}catch(RuntimeException e){ // e.g. concurrently modified, the object stays counted shallow
+			log.debug("cannot walk " + current.getClass() + ": " + e);
+		}
+	}
+
+	/**
+	 * @param size number of entries
+	 * @return estimated bytes of the table and entries of a HashMap (or HashSet)
+	 */
+	long hashTableSize(final int size){
+		if(size == 0){
+			return 0;
+		}
+		int table = MIN_TABLE;
+		while(table * LOAD_FACTOR < size){
+			table *= 2;
+		}
+		long entry = align(header + INT + ENTRY_REFERENCES * reference);
+		return arraySize(Object.class, table) + size * entry;
+	}
+
+	/**
+	 * @param value
+	 * @return estimated bytes of the character array of a (compact, java 9+) String
+	 */
+	long stringValueSize(final String value){
+		boolean latin1 = true;
+		for(int i = 0; i < value.length() && latin1; i++){
+			latin1 = value.charAt(i) <= LATIN1;
+		}
+		return arraySize(byte.class, latin1 ? value.length() : 2 * value.length());
+	}
+
+	private static void pushIfNotNull(final Deque<Object> todo, final Object value){
+		if(value != null){
+			todo.push(value);
+		}
+	}
+
+	/**
+	 * @param type
+	 * @return the estimated size of one instance of a non array type
+	 */
+	long shallowSizeOf(final Class<?> type){
+		return layoutOf(type).size;
+	}
+
+	/**
+	 * @param object
+	 * @return the estimated size of the object itself (0 for null)
+	 */
+	long shallowSizeOf(final Object object){
+		if(object == null){
+			return 0;
+		}
+		Class<?> type = object.getClass();
+		return type.isArray() ? arraySize(type.getComponentType(), Array.getLength(object)) : shallowSizeOf(type);
+	}
+
+	long arraySize(final Class<?> componentType, final int length){
+		return align(header + ARRAY_LENGTH + (long) length * fieldSize(componentType));
+	}
+
+	private ClassLayout layoutOf(final Class<?> type){
+		ClassLayout layout = layouts.get(type);
+		if(layout == null){
+			long size = header;
+			boolean opaque = false;
+			List<Field> references = new ArrayList<Field>();
+			for(Class<?> current = type; current != null; current = current.getSuperclass()){
+				for(Field field: current.getDeclaredFields()){
+					if(!Modifier.isStatic(field.getModifiers())){
+						size += fieldSize(field.getType());
+						if(!field.getType().isPrimitive()){
+							if(accessible(field)){
+								references.add(field);
+							}else{
+								opaque = true;
+							}
+						}
+					}
+				}
+			}
+			layout = new ClassLayout(align(size), references, opaque);
+			layouts.put(type, layout);
+		}
+		return layout;
+	}
+
+	private int fieldSize(final Class<?> type){
+		if(type == long.class || type == double.class){
+			return 8;
+		}else if(type == int.class || type == float.class){
+			return 4;
+		}else if(type == short.class || type == char.class){
+			return 2;
+		}else if(type == byte.class || type == boolean.class){
+			return 1;
+		}
+		return reference;
+	}
+
+	private static long align(final long size){
+		return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	/**
+	 * on java 9+ the fields of JDK internals are only accessible with --add-opens, those objects are counted shallow
+	 */
+	private static boolean accessible(final Field field){
+		try{
+			field.setAccessible(true);
+			return true;
+		}catch(RuntimeException e){
+			log.debug("cannot access " + field + ", its value is not counted");
+			return false;
+		}
+	}
+
+	private static Object get(final Field field, final Object owner){
+		try {
+			return field.get(owner);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("field should be accessible " + field, e);
+		}
+	}
+
+	private static boolean isEnabled(final String option, final boolean defaultValue){
+		try{
+			return Boolean.parseBoolean(HotSpotOptions.get(option));
+		}catch(Exception e){ // unknown option (UseCompressedClassPointers is java 8+)
+			return defaultValue;
+		}catch(LinkageError e){ // not a HotSpot JVM, com.sun.management is missing
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * the only reference to com.sun.management, so a missing class fails on use instead of loading the estimator
+	 */
+	private static class HotSpotOptions {
+		static String get(final String option) throws IOException{
+			HotSpotDiagnosticMXBean bean = ManagementFactory.newPlatformMXBeanProxy(ManagementFactory.getPlatformMBeanServer(), 
+					"com.sun.management:type=HotSpotDiagnostic", HotSpotDiagnosticMXBean.class);
+			return bean.getVMOption(option).getValue();
+		}
+	}
+
+	/**
+	 * size and reference fields of a class
+	 */
+	private static class ClassLayout {
+		private final long size;
+		private final List<Field> references;
+		private final boolean opaque;
+
+		ClassLayout(final long size, final List<Field> references, final boolean opaque){
+			this.size = size;
+			this.references = references;
+			this.opaque = opaque;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import julius.utilities.DaemonThreadFactory;
+import julius.validation.Assertions;
+
+/**
+ * Low overhead sampling profiler, an extension of ThreadStatHelper.getThreadStatusInfo() which only shows the top frame once.
+ * 
+ * A background thread takes Thread.getAllStackTraces() every interval and counts the full stacks in the
+ * 'collapsed stack' format (root;caller;method count), which is the input of flame graph tools like flamegraph.pl
+ * 
+ * SamplingProfiler profiler = new SamplingProfiler(20, 2000, true);
+ * profiler.start();
+ * ..
+ * profiler.stop();
+ * profiler.writeCollapsedStacks(new FileWriter("profile.collapsed"));
+ * 
+ * The time spent sampling is accumulated, once it exceeds the overhead budget the profiler stops itself,
+ * so it can safely be left running in production. At most MAX_STACKS distinct stacks are kept, samples of
+ * new stacks after that are counted as OTHER_STACKS.
+ */
+public class SamplingProfiler {
+
+	/** maximum number of distinct stacks */
+	public static final int MAX_STACKS = 10000;
+	/** the collapsed stack that counts the samples beyond MAX_STACKS */
+	public static final String OTHER_STACKS = "(other)";
+
+	private static final String THREAD_NAME = "julius-profiler";
+
+	private final long intervalInMs;
+	private final long budgetInNanos;
+	private final boolean runnableOnly;
+	private final int maxStacks;
+	private final Map<String, Long> stacks = new HashMap<String, Long>();
+	private ScheduledExecutorService sampler;
+	private long samples;
+	private long overheadInNanos;
+
+	/**
+	 * @param intervalInMs time between two samples
+	 * @param overheadBudgetInMs total time the profiler may spend sampling before it stops itself
+	 * @param runnableOnly true to skip threads that are blocked/waiting (cpu profile), false for a wall clock profile
+	 */
+	public SamplingProfiler(final long intervalInMs, final long overheadBudgetInMs, final boolean runnableOnly){
+		this(intervalInMs, overheadBudgetInMs, runnableOnly, MAX_STACKS);
+	}
+
+	SamplingProfiler(final long intervalInMs, final long overheadBudgetInMs, final boolean runnableOnly, final int maxStacks){
+		Assertions.argument.assertTrue(intervalInMs > 0, "the interval should be > 0");
+		Assertions.argument.assertTrue(overheadBudgetInMs > 0, "the overhead budget should be > 0");
+		this.intervalInMs = intervalInMs;
+		this.budgetInNanos = TimeUnit.MILLISECONDS.toNanos(overheadBudgetInMs);
+		this.runnableOnly = runnableOnly;
+		this.maxStacks = maxStacks;
+	}
+
+	/**
+	 * starts sampling on a background thread
+	 */
+	public synchronized void start(){
+		Assertions.state.assertTrue(sampler == null, "the profiler is already running");
+		sampler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(THREAD_NAME));
+		sampler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				sample();
+			}
+		}, 0, intervalInMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * stops sampling, the collected stacks remain available
+	 */
+	public synchronized void stop(){
+		if(sampler != null){
+			sampler.shutdown();
+			sampler = null;
+		}
+	}
+
+	/**
+	 * @return true while sampling (false after stop() or when the budget is used up)
+	 */
+	public synchronized boolean isRunning(){
+		return sampler != null;
+	}
+
+	/**
+	 * forgets the collected stacks and the used budget
+	 */
+	public synchronized void reset(){
+		stacks.clear();
+		samples = 0;
+		overheadInNanos = 0;
+	}
+
+	/**
+	 * takes one sample of all threads, except the calling thread and the threads of the profiler 
+	 * (also of a former start() that may still be finishing)
+	 */
+	void sample(){
+		long start = System.nanoTime();
+		Thread current = Thread.currentThread();
+		Map<Thread, StackTraceElement[]> all = Thread.getAllStackTraces();
+		synchronized(this){
+			for(Map.Entry<Thread, StackTraceElement[]> entry: all.entrySet()){
+				Thread thread = entry.getKey();
+				if(thread != current && !thread.getName().startsWith(THREAD_NAME) && entry.getValue().length > 0 
+						&& (!runnableOnly || thread.getState() == Thread.State.RUNNABLE)){
+					count(collapse(entry.getValue()));
+				}
+			}
+			samples++;
+			overheadInNanos += System.nanoTime() - start;
+			if(overheadInNanos > budgetInNanos){
+				stop();
+			}
+		}
+	}
+
+	private void count(final String stack){
+		String key = stacks.containsKey(stack) || stacks.size() < maxStacks ? stack : OTHER_STACKS;
+		Long count = stacks.get(key);
+		stacks.put(key, count == null ? 1 : count + 1);
+	}
+
+	/**
+	 * @param frames top frame first (as returned by Thread.getStackTrace)
+	 * @return frames from root to top separated by ';'
+	 */
+	static String collapse(final StackTraceElement[] frames){
+		StringBuilder builder = new StringBuilder();
+		for(int i = frames.length - 1; i >= 0; i--){
+			builder.append(frames[i].getClassName());
+			builder.append('.');
+			builder.append(frames[i].getMethodName());
+			if(i > 0){
+				builder.append(';');
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * @return copy of the collapsed stacks with their number of samples
+	 */
+	public synchronized Map<String, Long> getStackCounts(){
+		return new HashMap<String, Long>(stacks);
+	}
+
+	/**
+	 * @return all collapsed stacks, one 'frame;frame;frame count' per line
+	 */
+	public String getCollapsedStacks(){
+		StringBuilder builder = new StringBuilder();
+		for(Map.Entry<String, Long> entry: getStackCounts().entrySet()){
+			builder.append(entry.getKey());
+			builder.append(' ');
+			builder.append(entry.getValue());
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * writes the collapsed stacks (the writer is not closed)
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void writeCollapsedStacks(final Writer writer) throws IOException{
+		writer.write(getCollapsedStacks());
+		writer.flush();
+	}
+
+	/**
+	 * @return number of samples taken
+	 */
+	public synchronized long getSampleCount(){
+		return samples;
+	}
+
+	/**
+	 * @return time spent sampling in nanos
+	 */
+	public synchronized long getOverheadInNanos(){
+		return overheadInNanos;
+	}
+}
@@ -33,7 +33,7 @@ import julius.validation.Assertions;
  * 
  * alternatively apache commons and spring also have a stopwatch
  * 
- * FEATURE Calculate the average for multiple start/stop sequences
+ * for sub-millisecond timings, named laps and averages of repeated laps see NanoStopWatch
  */
 public class StopWatch {
 
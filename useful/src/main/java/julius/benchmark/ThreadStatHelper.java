@@ -19,10 +19,17 @@ package julius.benchmark;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import julius.annotations.Experimental;
 import julius.utilities.CollectionHelper;
+import julius.utilities.Sleep;
+import julius.validation.Assertions;
 
 /**
  * Debug tool to see whats going on
@@ -59,6 +66,7 @@ public class ThreadStatHelper {
     }
 
     /**
+     * see ContentionTracker for the blocked/waited time per lock between two calls
      * @return info about held locks
      */
     public static String getLockInfo() {
@@ -78,4 +86,91 @@ public class ThreadStatHelper {
         return builder.toString();
     }
 
-}
\ No newline at end of file
+    /**
+     * Samples the cpu time of all threads twice, 'intervalInMs' apart (the calling thread sleeps in between),
+     * and reports the threads that used the most cpu in that interval with their state and top frame.
+     * 
+     * the share is the cpu time of the thread relative to the interval, 100% is one fully used core
+     * 
+     * @param intervalInMs time between the two samples
+     * @param top number of threads to report
+     * @return multiline summary of the busiest threads
+     */
+    public static String getThreadCpuInfo(final long intervalInMs, final int top) {
+        Assertions.argument.assertTrue(intervalInMs > 0, "the interval should be > 0");
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assertions.state.assertTrue(bean.isThreadCpuTimeSupported(), "thread cpu time is not supported by this JVM");
+        if (!bean.isThreadCpuTimeEnabled()) {
+            bean.setThreadCpuTimeEnabled(true);
+        }
+        Map<Long, Long> before = getCpuTimes(bean);
+        long start = System.nanoTime();
+        Sleep.sleep.milliseconds(intervalInMs);
+        Map<Long, Long> after = getCpuTimes(bean);
+        final long interval = System.nanoTime() - start;
+
+        final Map<Long, Long> deltas = new HashMap<Long, Long>();
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : after.entrySet()) {
+            Long previous = before.get(entry.getKey());
+            long delta = entry.getValue() - (previous == null ? 0 : previous);
+            deltas.put(entry.getKey(), delta);
+            total += delta;
+        }
+        List<Long> ids = new ArrayList<Long>(deltas.keySet());
+        Collections.sort(ids, new Comparator<Long>() {
+            @Override
+            public int compare(final Long o1, final Long o2) {
+                return deltas.get(o2).compareTo(deltas.get(o1));
+            }
+        });
+
+        Map<Long, Thread> threads = new HashMap<Long, Thread>();
+        Map<Thread, StackTraceElement[]> stacks = Thread.getAllStackTraces();
+        for (Thread thread : stacks.keySet()) {
+            threads.put(thread.getId(), thread);
+        }
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("== thread cpu (" + intervalInMs + "ms, total " + percentage(total, interval) + "% of "
+                + Runtime.getRuntime().availableProcessors() + " cores) ==\n");
+        for (Long id : ids.subList(0, Math.min(top, ids.size()))) {
+            Thread thread = threads.get(id);
+            builder.append("Thread: ");
+            builder.append(percentage(deltas.get(id), interval));
+            builder.append("% \t");
+            builder.append(deltas.get(id) / 1000000);
+            builder.append("ms \t: ");
+            if (thread == null) {
+                builder.append("(terminated) ").append(id);
+            } else {
+                builder.append(thread.getState());
+                builder.append(" \t: ");
+                builder.append(thread.getName());
+                StackTraceElement[] stack = stacks.get(thread);
+                if (stack != null && stack.length > 0) {
+                    builder.append("\t--> ");
+                    builder.append(stack[0]);
+                }
+            }
+            builder.append("\n");
+        }
+        return builder.toString();
+    }
+
+    private static Map<Long, Long> getCpuTimes(final ThreadMXBean bean) {
+        Map<Long, Long> times = new HashMap<Long, Long>();
+        for (long id : bean.getAllThreadIds()) {
+            long time = bean.getThreadCpuTime(id);
+            if (time >= 0) { // -1 for threads that died in the mean time
+                times.put(id, time);
+            }
+        }
+        return times;
+    }
+
+    private static long percentage(final long part, final long total) {
+        return total == 0 ? 0 : part * 100 / total;
+    }
+
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import julius.utilities.DaemonThreadFactory;
+import julius.validation.Assertions;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Low frequency background watchdog next to ThreadStatHelper, so deadlocks and lock convoys are reported when they
+ * happen instead of when someone happens to call getLockThreadInfo().
+ * 
+ * Every interval it
+ * - runs findDeadlockedThreads (monitors and java.util.concurrent locks)
+ * - flags threads that are BLOCKED on the same monitor for longer than the threshold
+ * and reports them (once) with the stacks of the waiting and owning threads to the ThreadWatchdogListener.
+ * 
+ * ThreadWatchdog watchdog = new ThreadWatchdog(10000, 5000, listener);
+ * watchdog.start();
+ * 
+ * The blocked time is measured between checks, so it is accurate up to the interval.
+ */
+public class ThreadWatchdog {
+
+	private static Logger log = Logger.getLogger(ThreadWatchdog.class);
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private final long intervalInMs;
+	private final long thresholdInNanos;
+	private final ThreadWatchdogListener listener;
+	/** thread id -> the monitor it is blocked on and since when */
+	private final Map<Long, Block> blocks = new HashMap<Long, Block>();
+	private Set<Long> reportedDeadlock = new HashSet<Long>();
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * @param intervalInMs time between two checks
+	 * @param blockThresholdInMs threads blocked longer on the same monitor are reported
+	 * @param listener
+	 */
+	public ThreadWatchdog(final long intervalInMs, final long blockThresholdInMs, final ThreadWatchdogListener listener){
+		Assertions.argument.assertTrue(intervalInMs > 0, "the interval should be > 0");
+		Assertions.argument.assertNotNull(listener, "listener");
+		this.intervalInMs = intervalInMs;
+		this.thresholdInNanos = TimeUnit.MILLISECONDS.toNanos(blockThresholdInMs);
+		this.listener = listener;
+	}
+
+	/**
+	 * starts the checks on a background thread
+	 */
+	public synchronized void start(){
+		Assertions.state.assertTrue(scheduler == null, "the watchdog is already running");
+		scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("julius-watchdog"));
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					check();
+				}catch(RuntimeException e){
+					log.error("thread watchdog check failed", e);
+				}
+			}
+		}, intervalInMs, intervalInMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * stops the checks
+	 */
+	public synchronized void stop(){
+		if(scheduler != null){
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * performs one check, normally called by the background thread
+	 */
+	synchronized void check(){
+		checkDeadlocks();
+		checkBlocked(System.nanoTime());
+	}
+
+	private void checkDeadlocks(){
+		long[] ids = threads.findDeadlockedThreads();
+		if(ids == null){
+			reportedDeadlock.clear();
+			return;
+		}
+		Set<Long> current = new HashSet<Long>();
+		for(long id: ids){
+			current.add(id);
+		}
+		if(!current.equals(reportedDeadlock)){
+			reportedDeadlock = current;
+			listener.handleDeadlock(Arrays.asList(threads.getThreadInfo(ids, true, true)));
+		}
+	}
+
+	private void checkBlocked(final long now){
+		Set<Long> stillBlocked = new HashSet<Long>();
+		for(ThreadInfo info: threads.getThreadInfo(threads.getAllThreadIds())){
+			if(info == null || info.getThreadState() != Thread.State.BLOCKED || info.getLockName() == null){
+				continue;
+			}
+			stillBlocked.add(info.getThreadId());
+			Block block = blocks.get(info.getThreadId());
+			if(block == null || !block.lockName.equals(info.getLockName())){
+				blocks.put(info.getThreadId(), new Block(info.getLockName(), now));
+			}else if(!block.reported && now - block.since > thresholdInNanos){
+				block.reported = true;
+				report(info, TimeUnit.NANOSECONDS.toMillis(now - block.since));
+			}
+		}
+		blocks.keySet().retainAll(stillBlocked);
+	}
+
+	private void report(final ThreadInfo blocked, final long blockedInMs){
+		long ownerId = blocked.getLockOwnerId();
+		long[] ids = ownerId < 0 ? new long[]{blocked.getThreadId()} : new long[]{blocked.getThreadId(), ownerId};
+		ThreadInfo[] infos = threads.getThreadInfo(ids, true, true);
+		ThreadInfo owner = ownerId < 0 ? null : infos[1];
+		listener.handleLongBlock(infos[0] == null ? blocked : infos[0], owner, blockedInMs);
+	}
+
+	/**
+	 * the monitor a thread is blocked on
+	 */
+	private static class Block {
+		private final String lockName;
+		private final long since;
+		private boolean reported;
+
+		Block(final String lockName, final long since){
+			this.lockName = lockName;
+			this.since = since;
+		}
+	}
+
+	/**
+	 * @param infos
+	 * @return the stacks of the threads as multiline string (like a thread dump)
+	 */
+	public static String toString(final List<ThreadInfo> infos){
+		StringBuilder builder = new StringBuilder();
+		for(ThreadInfo info: infos){
+			builder.append(info.getThreadName());
+			builder.append("\t");
+			builder.append(info.getThreadState());
+			builder.append("\twaiting on:");
+			builder.append(info.getLockName());
+			builder.append("\towned by:");
+			builder.append(info.getLockOwnerName());
+			builder.append("\n");
+			for(StackTraceElement element: info.getStackTrace()){
+				builder.append("\tat ");
+				builder.append(element);
+				builder.append("\n");
+			}
+		}
+		return builder.toString();
+	}
+}
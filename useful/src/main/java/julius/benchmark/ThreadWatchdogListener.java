@@ -0,0 +1,41 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.lang.management.ThreadInfo;
+import java.util.List;
+
+/**
+ * callback of ThreadWatchdog, the ThreadInfo objects contain the stack traces and the held monitors/synchronizers
+ */
+public interface ThreadWatchdogListener {
+
+	/**
+	 * called once for every (new) set of deadlocked threads
+	 * @param deadlocked the threads in the cycle
+	 */
+	void handleDeadlock(List<ThreadInfo> deadlocked);
+
+	/**
+	 * called once when a thread is BLOCKED on the same monitor for longer than the threshold
+	 * @param blocked the waiting thread
+	 * @param owner the thread that holds the monitor (null if it was released in the mean time)
+	 * @param blockedInMs time since the watchdog first saw the thread blocked on this monitor
+	 */
+	void handleLongBlock(ThreadInfo blocked, ThreadInfo owner, long blockedInMs);
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Nested, named timing scopes that build a call tree per thread. In contrast to a flat StopWatch it shows which
+ * sub-stage of a pipeline grew when the latency regressed.
+ * 
+ * private static final TimingScopes scopes = new TimingScopes();
+ * ..
+ * scopes.enter("request");
+ * 		scopes.enter("parse");
+ * 		..
+ * 		scopes.exit();
+ * 		scopes.enter("render");
+ * 		..
+ * 		scopes.exit();
+ * scopes.exit();
+ * ..
+ * System.out.println(scopes.currentTree().getReport());
+ * 
+ * Like NanoStopWatch it uses System.nanoTime(), enter() only allocates the first time a scope is seen under a parent.
+ * Use try/finally to make sure every enter() has its exit(). The trees of other threads can safely be read (getTrees,
+ * getChromeTrace), but the times are only consistent when those threads are not within a scope.
+ * 
+ * The tree of a thread is kept until removeFinishedThreads() (for threads that ended) or remove() (by the thread itself,
+ * e.g. a pooled thread at the end of its task) is called.
+ */
+public class TimingScopes {
+
+	private final List<CallTree> trees = new CopyOnWriteArrayList<CallTree>();
+	private final ThreadLocal<CallTree> tree = new ThreadLocal<CallTree>(){
+		@Override
+		protected CallTree initialValue() {
+			CallTree created = new CallTree(Thread.currentThread());
+			trees.add(created);
+			return created;
+		}
+	};
+
+	/**
+	 * starts a scope within the current scope of this thread
+	 * @param name
+	 */
+	public void enter(final String name){
+		tree.get().enter(name, System.nanoTime());
+	}
+
+	/**
+	 * ends the current scope of this thread
+	 */
+	public void exit(){
+		long now = System.nanoTime();
+		tree.get().exit(now);
+	}
+
+	/**
+	 * @return the call tree of the current thread
+	 */
+	public CallTree currentTree(){
+		return tree.get();
+	}
+
+	/**
+	 * clears the tree of the current thread
+	 */
+	public void reset(){
+		tree.get().reset();
+	}
+
+	/**
+	 * removes the tree of the current thread (a next enter() starts a new tree)
+	 */
+	public void remove(){
+		trees.remove(tree.get());
+		tree.remove();
+	}
+
+	/**
+	 * removes the trees of the threads that have ended
+	 * @return the removed trees
+	 */
+	public List<CallTree> removeFinishedThreads(){
+		List<CallTree> removed = new ArrayList<CallTree>();
+		for(CallTree callTree: trees){
+			if(!callTree.isThreadAlive()){
+				removed.add(callTree);
+			}
+		}
+		trees.removeAll(removed);
+		return removed;
+	}
+
+	/**
+	 * @return the trees of all threads that used these scopes
+	 */
+	public List<CallTree> getTrees(){
+		return Collections.unmodifiableList(trees);
+	}
+
+	/**
+	 * Exports the trees in the Chrome trace-event format (chrome://tracing, Perfetto, speedscope).
+	 * 
+	 * The tree is aggregated, so every node becomes one 'complete' event with its total time as duration,
+	 * laid out after its preceding siblings within the parent. 
+	 * 
+	 * @return JSON with one process and a track per thread
+	 */
+	public String getChromeTrace(){
+		StringBuilder builder = new StringBuilder();
+		builder.append("{\"traceEvents\":[");
+		boolean first = true;
+		for(CallTree callTree: trees){
+			long offset = 0;
+			for(CallTree.Node node: callTree.getRoot().getChildren()){
+				first = appendEvents(builder, node, callTree.getThreadId(), offset, first);
+				offset += node.getTotalNanos();
+			}
+		}
+		builder.append("],\"displayTimeUnit\":\"ns\"}");
+		return builder.toString();
+	}
+
+	private static boolean appendEvents(final StringBuilder builder, final CallTree.Node node, final long threadId, final long start, final boolean first){
+		if(!first){
+			builder.append(',');
+		}
+		builder.append("{\"name\":\"").append(escape(node.getName()));
+		builder.append("\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(threadId);
+		builder.append(",\"ts\":").append(micros(start));
+		builder.append(",\"dur\":").append(micros(node.getTotalNanos()));
+		builder.append(",\"args\":{\"count\":").append(node.getCount());
+		builder.append(",\"selfMicros\":").append(micros(node.getSelfNanos()));
+		builder.append("}}");
+		long offset = start;
+		for(CallTree.Node child: node.getChildren()){
+			appendEvents(builder, child, threadId, offset, false);
+			offset += child.getTotalNanos();
+		}
+		return false;
+	}
+
+	private static String micros(final long nanos){
+		return String.valueOf(nanos / 1000.0);
+	}
+
+	private static String escape(final String value){
+		StringBuilder builder = new StringBuilder();
+		for(char c: value.toCharArray()){
+			if(c == '"' || c == '\\'){
+				builder.append('\\').append(c);
+			}else if(c < ' '){
+				builder.append(String.format("\\u%04x", (int) c));
+			}else{
+				builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+}
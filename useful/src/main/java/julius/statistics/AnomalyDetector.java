@@ -0,0 +1,169 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import julius.validation.Assertions;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Detects throughput anomalies (a collapse or a spike) within one window of PeriodicSignalSampler, without 
+ * shipping the samples anywhere. 
+ * 
+ * Per id it keeps an exponentially weighted mean and variance of the rate (signals per second), 
+ * a window with a rate more then 'zScore' standard deviations from the mean is reported to the listener. 
+ * The state is three numbers per id, whatever the number of windows.
+ * 
+ * AnomalyDetector detector = new AnomalyDetector(4, listener);
+ * ConcurrentPeriodicSignalSampler sampler = ConcurrentPeriodicSignalSampler.scheduled();
+ * sampler.registerSignalSamplerSec("requests", detector, 10);
+ * 
+ * Use a scheduled() sampler: it reports every window on time, also windows without signals. The other samplers
+ * only report a window at the next signal, so a collapse to zero is never reported, and the window after an idle 
+ * period is reported with the nominal duration (so the rate is too high).
+ * 
+ * The first windows (warmup) only build the baseline. Anomalies are part of the baseline too, so a lasting 
+ * change becomes the new normal after a number of windows (depending on alpha). The standard deviation 
+ * is at least 1% of the mean and at least one signal per window, so a flat signal (also a flat zero) 
+ * does not alert on tiny changes but does on large ones.
+ */
+public class AnomalyDetector implements SignalSampleCallback {
+
+	/** default weight of a new window */
+	public static final double DEFAULT_ALPHA = 0.1;
+	/** default number of windows before alerting */
+	public static final int DEFAULT_WARMUP = 10;
+
+	private static final double MS_IN_SEC = 1000;
+	private static final double MIN_RELATIVE_DEVIATION = 0.01;
+
+	private static Logger log = Logger.getLogger(AnomalyDetector.class);
+
+	private final double alpha;
+	private final double zScore;
+	private final int warmup;
+	private final AnomalyListener listener;
+	private final ConcurrentMap<String, Baseline> baselines = new ConcurrentHashMap<String, Baseline>();
+
+	/**
+	 * with the default alpha and warmup
+	 * @param zScore threshold (e.g. 3 or 4)
+	 * @param listener
+	 */
+	public AnomalyDetector(final double zScore, final AnomalyListener listener){
+		this(DEFAULT_ALPHA, zScore, DEFAULT_WARMUP, listener);
+	}
+
+	/**
+	 * @param alpha weight of a new window (between 0 and 1, higher adapts faster)
+	 * @param zScore threshold (> 0)
+	 * @param warmup number of windows before alerting
+	 * @param listener
+	 */
+	public AnomalyDetector(final double alpha, final double zScore, final int warmup, final AnomalyListener listener){
+		Assertions.argument.assertTrue(alpha > 0 && alpha < 1, "alpha should be between 0 and 1");
+		Assertions.argument.assertTrue(zScore > 0, "the z-score should be > 0");
+		Assertions.argument.assertTrue(warmup >= 1, "the warmup should be at least one window");
+		Assertions.argument.assertNotNull(listener, "listener");
+		this.alpha = alpha;
+		this.zScore = zScore;
+		this.warmup = warmup;
+		this.listener = listener;
+	}
+
+	@Override
+	public void handleSample(final String id, final long signalCount, final long durationInMs) {
+		if(durationInMs <= 0){
+			return;
+		}
+		double rate = signalCount * MS_IN_SEC / durationInMs;
+		Baseline baseline = baselineOf(id);
+		double expected;
+		double deviation;
+		synchronized (baseline) {
+			expected = baseline.getMean();
+			deviation = baseline.update(rate, MS_IN_SEC / durationInMs);
+		}
+		if(Math.abs(deviation) > zScore){
+			try{
+				listener.handleAnomaly(id, rate, expected, deviation);
+			}catch(RuntimeException e){
+				log.error("anomaly listener failed", e);
+			}
+		}
+	}
+
+	/**
+	 * @param id
+	 * @return expected signals per second, NaN when the id has no samples
+	 */
+	public double getBaseline(final String id){
+		Baseline baseline = baselines.get(id);
+		return baseline == null ? Double.NaN : baseline.getMean();
+	}
+
+	private Baseline baselineOf(final String id){
+		Baseline baseline = baselines.get(id);
+		if(baseline == null){
+			Baseline created = new Baseline();
+			baseline = baselines.putIfAbsent(id, created);
+			if(baseline == null){
+				baseline = created;
+			}
+		}
+		return baseline;
+	}
+
+	/**
+	 * exponentially weighted mean and variance of one id
+	 */
+	private class Baseline {
+		private long windows;
+		private double mean;
+		private double variance;
+
+		/**
+		 * @param rate
+		 * @param oneSignal the rate of one signal in the window, the minimum deviation
+		 * @return z-score of the rate before it is added, 0 during the warmup
+		 */
+		synchronized double update(final double rate, final double oneSignal){
+			double deviation = 0;
+			if(windows >= warmup){
+				double stdDev = Math.max(Math.sqrt(variance), Math.max(Math.abs(mean) * MIN_RELATIVE_DEVIATION, oneSignal));
+				deviation = (rate - mean) / stdDev;
+			}
+			if(windows == 0){
+				mean = rate;
+			}else{
+				double difference = rate - mean;
+				double increment = alpha * difference;
+				mean += increment;
+				variance = (1 - alpha) * (variance + difference * increment);
+			}
+			windows++;
+			return deviation;
+		}
+
+		synchronized double getMean(){
+			return mean;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+/**
+ * callback for samples that deviate from the baseline of AnomalyDetector
+ */
+public interface AnomalyListener {
+
+	/**
+	 * called on the thread that handled the sample, should return quickly
+	 * @param id of the signal
+	 * @param rate signals per second of the window
+	 * @param baseline expected signals per second
+	 * @param zScore number of standard deviations between rate and baseline (negative for a drop)
+	 */
+	void handleAnomaly(String id, double rate, double baseline, double zScore);
+
+}
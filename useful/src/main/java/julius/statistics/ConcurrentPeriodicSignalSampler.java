@@ -0,0 +1,155 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.statistics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import julius.utilities.DaemonThreadFactory;
+import julius.utilities.DateHelper;
+import julius.validation.Assertions;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Threadsafe variant of PeriodicSignalSampler, which can be shared by all request threads.
+ * 
+ * - registration (and unregistration) is safe while other threads are counting
+ * - counting is done on a StripedCounter per id, so threads don't contend on one counter
+ * - rolling the window never blocks the signalling threads (see ConcurrentSignalSampleHolder)
+ * 
+ * The default instance works like PeriodicSignalSampler, the callback is only called for windows with at least
+ * one count() and it is called by the counting thread that notices the end of the window.
+ * 
+ * An instance created with scheduled() uses one background (daemon) thread that rolls every registered window
+ * on time, also windows without any count(). The callbacks are called on that thread, so count() only counts.
+ * Keep in mind that a slow callback delays the other windows, call shutdown() when the sampler is no longer used.
+ * 
+ * For the hottest paths use the SignalCounter returned by registerSignalSamplerSec, count(id) is a convenience
+ * that looks up the same handle by id. In a scheduled() sampler the handle of an unregistered (or replaced) id
+ * is no longer reported.
+ */
+public class ConcurrentPeriodicSignalSampler {
+
+	private static Logger log = Logger.getLogger(ConcurrentPeriodicSignalSampler.class);
+
+	private final ConcurrentMap<String, ConcurrentSignalSampleHolder> samplers = new ConcurrentHashMap<String, ConcurrentSignalSampleHolder>();
+	private final ConcurrentMap<String, ScheduledFuture<?>> rollers = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+	private final ScheduledExecutorService scheduler;
+	/** keeps samplers and rollers of an id in line when (re)registrations of that id run at once, count() does not lock */
+	private final Object registration = new Object();
+
+	/**
+	 * creates a sampler of which the windows are rolled by the counting threads
+	 */
+	public ConcurrentPeriodicSignalSampler() {
+		this(null);
+	}
+
+	private ConcurrentPeriodicSignalSampler(final ScheduledExecutorService scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * factory method for a sampler of which the windows are rolled by a background thread
+	 * @return new sampler with its own scheduler thread
+	 */
+	public static ConcurrentPeriodicSignalSampler scheduled() {
+		return new ConcurrentPeriodicSignalSampler(Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("julius-signal-sampler")));
+	}
+
+	/**
+	 * register the callback, replaces an existing registration for the same id
+	 * 
+	 * @param id
+	 * @param callback
+	 * @param size
+	 *            Size (in seconds) of the window for which we sum/count the signals
+	 * @return handle to signal directly, without the lookup of count(id)
+	 */
+	public SignalCounter registerSignalSamplerSec(final String id, final SignalSampleCallback callback, final int size) {
+		long durationInMs = DateHelper.secondsToMillis(size);
+		if (scheduler == null) {
+			ConcurrentSignalSampleHolder holder = new ConcurrentSignalSampleHolder(id, callback, durationInMs);
+			samplers.put(id, holder);
+			return holder;
+		} else {
+			ConcurrentSignalSampleHolder holder = new ConcurrentSignalSampleHolder(id, callback, durationInMs, false);
+			synchronized (registration) {
+				samplers.put(id, holder);
+				cancelRoller(rollers.put(id, scheduler.scheduleAtFixedRate(rollerOf(id, holder), durationInMs, durationInMs, TimeUnit.MILLISECONDS)));
+			}
+			return holder;
+		}
+	}
+
+	private static Runnable rollerOf(final String id, final ConcurrentSignalSampleHolder holder) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					holder.roll();
+				} catch (RuntimeException e) {
+					// a failing callback should not stop the rolling of the next windows
+					log.error("callback failed for " + id, e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * removes the registration, counts for the id are skipped afterwards
+	 * 
+	 * @param id
+	 */
+	public void unregister(final String id) {
+		synchronized (registration) {
+			samplers.remove(id);
+			cancelRoller(rollers.remove(id));
+		}
+	}
+
+	/**
+	 * stops the background thread of a scheduled() sampler, the current windows are not reported
+	 */
+	public void shutdown() {
+		Assertions.state.assertNotNull(scheduler, "scheduler (only scheduled() samplers can be shut down)");
+		scheduler.shutdownNow();
+	}
+
+	private static void cancelRoller(final ScheduledFuture<?> roller) {
+		if (roller != null) {
+			roller.cancel(false);
+		}
+	}
+
+	/**
+	 * register a count for a pre-registered id-callback (registerSignalSamplerSec). If it is not registered then it will skip the
+	 * call.
+	 * 
+	 * @param id
+	 */
+	public void count(final String id) {
+		ConcurrentSignalSampleHolder holder = samplers.get(id);
+		if (holder != null) {
+			holder.signal();
+		}
+	}
+}
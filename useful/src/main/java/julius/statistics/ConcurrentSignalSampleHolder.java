@@ -0,0 +1,115 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.statistics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Threadsafe variant of PeriodicSignalSampleHolder
+ * 
+ * signal() only increments a StripedCounter and checks the window end. The one thread that
+ * notices the end of the window (and wins the compare-and-set) rolls it and calls the callback,
+ * other threads keep counting without waiting. Signals that arrive during the rollover are counted
+ * in either the old or the new window.
+ * 
+ * When the holder is not rolled by signal, signal() only counts and a background thread
+ * (see ConcurrentPeriodicSignalSampler.scheduled()) calls roll() at the end of every window.
+ */
+public class ConcurrentSignalSampleHolder implements SignalCounter {
+
+	private final String id;
+	private final StripedCounter count = new StripedCounter();
+	private final AtomicLong windowStart;
+	private final SignalSampleCallback callback;
+	private final long durationInMs;
+	private final long durationInNanos;
+	private final boolean rolledBySignal;
+
+	/**
+	 * 
+	 * @param id
+	 * @param callback
+	 * @param durationInMs
+	 */
+	public ConcurrentSignalSampleHolder(final String id, final SignalSampleCallback callback, final long durationInMs){
+		this(id, callback, durationInMs, true);
+	}
+
+	/**
+	 * 
+	 * @param id
+	 * @param callback
+	 * @param durationInMs
+	 * @param rolledBySignal false when roll() is called by a scheduler
+	 */
+	public ConcurrentSignalSampleHolder(final String id, final SignalSampleCallback callback, final long durationInMs, final boolean rolledBySignal){
+		this.rolledBySignal = rolledBySignal;
+		this.callback = callback;
+		this.id = id;
+		this.durationInMs = durationInMs;
+		this.durationInNanos = TimeUnit.MILLISECONDS.toNanos(durationInMs);
+		this.windowStart = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * handle a signal, roll the window when it has ended (unless it is rolled by a scheduler) and count it,
+	 * like PeriodicSignalSampleHolder the signal that ends a window is counted in the new window
+	 */
+	@Override
+	public void signal(){
+		if(rolledBySignal){
+			rollIfCompleted(System.nanoTime());
+		}
+		count.increment();
+	}
+
+	/**
+	 * ends the current window unconditionally and calls the callback, also for a window without signals
+	 */
+	void roll(){
+		windowStart.set(System.nanoTime());
+		callback.handleSample(id, count.sumThenReset(), durationInMs);
+	}
+
+	/**
+	 * calls the callback if the window has ended and restarts the window.
+	 * @param now System.nanoTime()
+	 * @return true if this call rolled the window
+	 */
+	boolean rollIfCompleted(final long now){
+		long start = windowStart.get();
+		if(now - start <= durationInNanos || !windowStart.compareAndSet(start, now)){
+			return false;
+		}
+		callback.handleSample(id, count.sumThenReset(), durationInMs);
+		return true;
+	}
+
+	/**
+	 * @return id of the signal
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return number of signals in the current window (so far)
+	 */
+	public long getCurrentCount(){
+		return count.sum();
+	}
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput meter with exponentially weighted moving averages over 1, 5 and 15 minutes,
+ * like the unix load averages. Useful for trends (autoscaling) where the raw per-window
+ * counts of PeriodicSignalSampler are too noisy.
+ * 
+ * mark() only increments a StripedCounter, every TICK_INTERVAL_SEC the clock of Meters calls tick()
+ * which folds the marks of the interval into the averages.
+ */
+public class Meter {
+
+	/** interval (in seconds) in which the averages are updated */
+	public static final int TICK_INTERVAL_SEC = 5;
+
+	private static final int SEC_IN_MIN = 60;
+
+	private final String id;
+	private final StripedCounter uncounted = new StripedCounter();
+	private final AtomicLong count = new AtomicLong();
+	private final Ewma oneMinute = new Ewma(1);
+	private final Ewma fiveMinutes = new Ewma(5);
+	private final Ewma fifteenMinutes = new Ewma(15);
+
+	/**
+	 * @param id of the signal
+	 */
+	public Meter(final String id){
+		this.id = id;
+	}
+
+	/**
+	 * marks the occurrence of one event
+	 */
+	public void mark(){
+		uncounted.increment();
+	}
+
+	/**
+	 * @param events number of events that occurred
+	 */
+	public void mark(final long events){
+		uncounted.add(events);
+	}
+
+	/**
+	 * folds the marks since the former tick into the averages, should be called every TICK_INTERVAL_SEC
+	 * by one thread (the clock)
+	 */
+	void tick(){
+		long events = uncounted.sumThenReset();
+		count.addAndGet(events);
+		double rate = (double) events / TICK_INTERVAL_SEC;
+		oneMinute.update(rate);
+		fiveMinutes.update(rate);
+		fifteenMinutes.update(rate);
+	}
+
+	/**
+	 * @return id of the signal
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return total number of events up to the last tick
+	 */
+	public long getCount(){
+		return count.get();
+	}
+
+	/**
+	 * @return events per second, averaged over the last minute
+	 */
+	public double getOneMinuteRate(){
+		return oneMinute.rate;
+	}
+
+	/**
+	 * @return events per second, averaged over the last 5 minutes
+	 */
+	public double getFiveMinuteRate(){
+		return fiveMinutes.rate;
+	}
+
+	/**
+	 * @return events per second, averaged over the last 15 minutes
+	 */
+	public double getFifteenMinuteRate(){
+		return fifteenMinutes.rate;
+	}
+
+	@Override
+	public String toString() {
+		return id + "\tcount:" + getCount() + "\t1m:" + getOneMinuteRate() + "/s\t5m:" + getFiveMinuteRate() + "/s\t15m:" + getFifteenMinuteRate() + "/s";
+	}
+
+	/**
+	 * one moving average, only updated by the clock thread
+	 */
+	private static class Ewma {
+
+		private final double alpha;
+		private volatile boolean initialized;
+		private volatile double rate;
+
+		Ewma(final int minutes){
+			this.alpha = 1 - Math.exp(-(double) TICK_INTERVAL_SEC / (SEC_IN_MIN * minutes));
+		}
+
+		void update(final double instantRate){
+			if(initialized){
+				rate += alpha * (instantRate - rate);
+			}else{
+				rate = instantRate;
+				initialized = true;
+			}
+		}
+	}
+}
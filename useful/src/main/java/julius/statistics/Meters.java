@@ -0,0 +1,115 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.statistics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import julius.utilities.DaemonThreadFactory;
+
+/**
+ * Set of EWMA Meters keyed by the same ids as PeriodicSignalSampler.count(id),
+ * with one background (daemon) clock thread that ticks all meters.
+ * 
+ * Meters meters = new Meters();
+ * meters.registerMeter("requests");
+ * ..
+ * meters.mark("requests");
+ * ..
+ * meters.getMeter("requests").getFiveMinuteRate();
+ * 
+ * Threadsafe, registration is allowed while other threads mark. Call shutdown() to stop the clock.
+ */
+public class Meters {
+
+	private final ConcurrentMap<String, Meter> meters = new ConcurrentHashMap<String, Meter>();
+	private final ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("julius-meters"));
+
+	/**
+	 * starts the clock
+	 */
+	public Meters(){
+		clock.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				tick();
+			}
+		}, Meter.TICK_INTERVAL_SEC, Meter.TICK_INTERVAL_SEC, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * registers a meter for the id, or returns the existing one
+	 * @param id
+	 * @return the meter (which could also be marked directly)
+	 */
+	public Meter registerMeter(final String id){
+		Meter meter = meters.get(id);
+		return meter == null ? register(new Meter(id)) : meter;
+	}
+
+	/**
+	 * @param created
+	 * @return the registered meter with the same id, or 'created' when there was none
+	 */
+	Meter register(final Meter created){
+		Meter meter = meters.putIfAbsent(created.getId(), created);
+		return meter == null ? created : meter;
+	}
+
+	/**
+	 * marks an event for a pre-registered id (registerMeter), if it is not registered then it will skip the call.
+	 * @param id
+	 */
+	public void mark(final String id){
+		Meter meter = meters.get(id);
+		if(meter != null){
+			meter.mark();
+		}
+	}
+
+	/**
+	 * @param id
+	 * @return the meter or null if it is not registered
+	 */
+	public Meter getMeter(final String id){
+		return meters.get(id);
+	}
+
+	/**
+	 * @return unmodifiable view of all meters
+	 */
+	public Collection<Meter> getMeters(){
+		return Collections.unmodifiableCollection(meters.values());
+	}
+
+	/**
+	 * stops the clock, the rates are no longer updated
+	 */
+	public void shutdown(){
+		clock.shutdownNow();
+	}
+
+	void tick(){
+		for(Meter meter: meters.values()){
+			meter.tick();
+		}
+	}
+}
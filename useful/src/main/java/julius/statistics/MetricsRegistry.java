@@ -0,0 +1,343 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import julius.benchmark.LatencyRecorder;
+import julius.benchmark.LatencySnapshot;
+import julius.utilities.DaemonThreadFactory;
+import julius.validation.Assertions;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.RollingFileAppender;
+
+/**
+ * Registry of named metrics with a single (scheduled) snapshot that is published to a rolling file and/or JMX,
+ * so reporting has one format and one cost instead of one per SignalSampleCallback implementation.
+ * 
+ * - counter(id): StripedCounter, published as id.count
+ * - meter(id): Meter (ticked by the registry), published as id.count, id.m1_rate, id.m5_rate, id.m15_rate
+ * - timer(id): LatencyRecorder of nanos, published as id.count, id.mean, id.p50, id.p99, id.p999, id.max
+ * - histogram(id): PerThreadQuantileSketch, published as id.count, id.mean, id.p50, id.p99, id.max
+ * 
+ * The registry is also a SignalSampleCallback, the signal count of every window is added to histogram(id), 
+ * so the ids of PeriodicSignalSampler are reported as well:
+ * 
+ * MetricsRegistry registry = new MetricsRegistry("app");
+ * registry.publishTo(new File("metrics.log"), "10MB", 5);
+ * registry.registerMBean();
+ * registry.start(60);
+ * ..
+ * sampler.registerSignalSamplerSec("requests", registry, 1);
+ * registry.timer("db").record(System.nanoTime() - start);
+ * 
+ * All values are cumulative since the start. Ids are unique, an id can only be used for one type of metric.
+ * The JMX MBean (julius.statistics:type=MetricsRegistry,name=..) shows the last published snapshot, so reading 
+ * it does not cost anything.
+ */
+public class MetricsRegistry implements SignalSampleCallback {
+
+	private static final String LAYOUT = "%d{ISO8601}\t%m%n";
+
+	private final String name;
+	private final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<String, Object>();
+	private final Meters meters = new Meters();
+	private final ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("julius-metrics"));
+	private volatile SortedMap<String, Number> published = Collections.unmodifiableSortedMap(new TreeMap<String, Number>());
+	private volatile Logger file;
+	private volatile ObjectName mbean;
+
+	/**
+	 * @param name of the registry, used for the MBean and the file logger
+	 */
+	public MetricsRegistry(final String name){
+		Assertions.argument.assertNotNull(name, "name");
+		this.name = name;
+	}
+
+	/**
+	 * @param id
+	 * @return the counter for the id (created on first use)
+	 */
+	public StripedCounter counter(final String id){
+		Object metric = metrics.get(id);
+		return metric == null ? register(id, new StripedCounter(), StripedCounter.class) : cast(id, metric, StripedCounter.class);
+	}
+
+	/**
+	 * @param id
+	 * @return the meter for the id (created on first use)
+	 */
+	public Meter meter(final String id){
+		Object metric = metrics.get(id);
+		if(metric != null){
+			return cast(id, metric, Meter.class);
+		}
+		Meter created = new Meter(id);
+		Meter meter = register(id, created, Meter.class);
+		if(meter == created){ // only the meter that won the id is ticked
+			meters.register(created);
+		}
+		return meter;
+	}
+
+	/**
+	 * @param id
+	 * @return the timer (in nanos) for the id (created on first use)
+	 */
+	public LatencyRecorder timer(final String id){
+		Object metric = metrics.get(id);
+		return metric == null ? register(id, new LatencyRecorder(), LatencyRecorder.class) : cast(id, metric, LatencyRecorder.class);
+	}
+
+	/**
+	 * @param id
+	 * @return the histogram for the id (created on first use)
+	 */
+	public PerThreadQuantileSketch histogram(final String id){
+		Object metric = metrics.get(id);
+		return metric == null ? register(id, new PerThreadQuantileSketch(), PerThreadQuantileSketch.class) 
+				: cast(id, metric, PerThreadQuantileSketch.class);
+	}
+
+	/**
+	 * adds the signal count of the window to histogram(id)
+	 */
+	@Override
+	public void handleSample(final String id, final long signalCount, final long durationInMs) {
+		histogram(id).add(signalCount);
+	}
+
+	/**
+	 * @return current values of all metrics, sorted on name
+	 */
+	public SortedMap<String, Number> snapshot(){
+		SortedMap<String, Number> values = new TreeMap<String, Number>();
+		for(Map.Entry<String, Object> entry: metrics.entrySet()){
+			String id = entry.getKey();
+			Object metric = entry.getValue();
+			if(metric instanceof StripedCounter){
+				values.put(id + ".count", ((StripedCounter) metric).sum());
+			}else if(metric instanceof Meter){
+				Meter meter = (Meter) metric;
+				values.put(id + ".count", meter.getCount());
+				values.put(id + ".m1_rate", meter.getOneMinuteRate());
+				values.put(id + ".m5_rate", meter.getFiveMinuteRate());
+				values.put(id + ".m15_rate", meter.getFifteenMinuteRate());
+			}else if(metric instanceof LatencyRecorder){
+				LatencySnapshot timer = ((LatencyRecorder) metric).snapshot();
+				values.put(id + ".count", timer.getCount());
+				values.put(id + ".mean", timer.getMean());
+				values.put(id + ".p50", timer.getP50());
+				values.put(id + ".p99", timer.getP99());
+				values.put(id + ".p999", timer.getP999());
+				values.put(id + ".max", timer.getMax());
+			}else{
+				QuantileSketch histogram = ((PerThreadQuantileSketch) metric).snapshot();
+				values.put(id + ".count", histogram.getCount());
+				values.put(id + ".mean", histogram.getMean());
+				values.put(id + ".p50", histogram.getQuantile(0.5));
+				values.put(id + ".p99", histogram.getQuantile(0.99));
+				values.put(id + ".max", histogram.getMax());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * takes a snapshot, makes it available to JMX and writes it to the file (if configured)
+	 */
+	public void publish(){
+		SortedMap<String, Number> values = snapshot();
+		published = Collections.unmodifiableSortedMap(values);
+		Logger logger = file;
+		if(logger != null){
+			for(Map.Entry<String, Number> entry: values.entrySet()){
+				logger.info(entry.getKey() + "\t" + entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * @return the last published snapshot
+	 */
+	public SortedMap<String, Number> getPublished(){
+		return published;
+	}
+
+	/**
+	 * writes every published snapshot to a rolling file, a line per value (timestamp, name, value)
+	 * @param target file
+	 * @param maxFileSize e.g. "10MB"
+	 * @param maxBackups number of rolled files to keep
+	 * @throws IOException when the file cannot be opened
+	 */
+	public void publishTo(final File target, final String maxFileSize, final int maxBackups) throws IOException{
+		RollingFileAppender appender = new RollingFileAppender(new PatternLayout(LAYOUT), target.getPath());
+		appender.setMaxFileSize(maxFileSize);
+		appender.setMaxBackupIndex(maxBackups);
+		Logger logger = Logger.getLogger(MetricsRegistry.class.getName() + "." + name);
+		logger.setAdditivity(false);
+		logger.setLevel(Level.INFO);
+		logger.removeAllAppenders();
+		logger.addAppender(appender);
+		file = logger;
+	}
+
+	/**
+	 * registers the MBean julius.statistics:type=MetricsRegistry,name=.. at the platform MBeanServer
+	 * @return the name of the MBean
+	 * @throws JMException when the name is invalid or already registered
+	 */
+	public ObjectName registerMBean() throws JMException{
+		ObjectName objectName = new ObjectName("julius.statistics:type=MetricsRegistry,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new PublishedMBean(), objectName);
+		mbean = objectName;
+		return objectName;
+	}
+
+	/**
+	 * publishes every 'periodInSec' seconds on a background (daemon) thread
+	 * @param periodInSec
+	 */
+	public void start(final long periodInSec){
+		Assertions.argument.assertTrue(periodInSec > 0, "the period should be > 0");
+		publisher.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					publish();
+				}catch(RuntimeException e){
+					Logger.getLogger(MetricsRegistry.class).error("publishing metrics failed", e);
+				}
+			}
+		}, periodInSec, periodInSec, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * stops publishing and the meters, unregisters the MBean and closes the file
+	 */
+	public void shutdown(){
+		publisher.shutdownNow();
+		meters.shutdown();
+		ObjectName objectName = mbean;
+		if(objectName != null){
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				Logger.getLogger(MetricsRegistry.class).debug("MBean was not registered " + objectName);
+			}
+			mbean = null;
+		}
+		Logger logger = file;
+		if(logger != null){
+			logger.removeAllAppenders();
+			file = null;
+		}
+	}
+
+	private <T> T register(final String id, final T created, final Class<T> type){
+		Assertions.argument.assertNotNull(id, "id");
+		Object existing = metrics.putIfAbsent(id, created);
+		return existing == null ? created : cast(id, existing, type);
+	}
+
+	private static <T> T cast(final String id, final Object metric, final Class<T> type){
+		Assertions.argument.assertTrue(type.isInstance(metric), id + " is already registered as " + metric.getClass().getSimpleName());
+		return type.cast(metric);
+	}
+
+	/**
+	 * read only view of the published snapshot, an attribute per value
+	 */
+	private class PublishedMBean implements DynamicMBean {
+
+		@Override
+		public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+			Number value = published.get(attribute);
+			if(value == null){
+				throw new AttributeNotFoundException(attribute);
+			}
+			return value;
+		}
+
+		@Override
+		public AttributeList getAttributes(final String[] attributes) {
+			Map<String, Number> values = published;
+			AttributeList list = new AttributeList();
+			for(String attribute: attributes){
+				if(values.containsKey(attribute)){
+					list.add(new Attribute(attribute, values.get(attribute)));
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			Map<String, Number> values = published;
+			MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+			int i = 0;
+			for(Map.Entry<String, Number> entry: values.entrySet()){
+				attributes[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(), entry.getKey(), true, false, false);
+			}
+			return new MBeanInfo(MetricsRegistry.class.getName(), "metrics of " + name, attributes, null, 
+					new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+		}
+
+		@Override
+		public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("metrics are read only: " + attribute.getName());
+		}
+
+		@Override
+		public AttributeList setAttributes(final AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(final String actionName, final Object[] params, final String[] signature) throws ReflectionException {
+			throw new ReflectionException(new NoSuchMethodException(actionName), "the metrics have no operations");
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Quantile sketch for concurrent use: every thread adds to its own QuantileSketch (an uncontended lock),
+ * snapshot() merges them into a global view.
+ * 
+ * PerThreadQuantileSketch queueDepths = new PerThreadQuantileSketch();
+ * ..
+ * queueDepths.add(queue.size());
+ * ..
+ * queueDepths.snapshot().getQuantile(0.9);
+ * 
+ * The sketches of threads that have ended are kept, so the values are not lost. Use a pool of threads,
+ * not a new thread per task, otherwise the number of sketches (and the memory) keeps growing.
+ */
+public class PerThreadQuantileSketch {
+
+	private final double compression;
+	private final List<QuantileSketch> sketches = new CopyOnWriteArrayList<QuantileSketch>();
+	private final ThreadLocal<QuantileSketch> local = new ThreadLocal<QuantileSketch>(){
+		@Override
+		protected QuantileSketch initialValue() {
+			QuantileSketch sketch = new QuantileSketch(compression);
+			sketches.add(sketch);
+			return sketch;
+		}
+	};
+
+	/**
+	 * with the default compression
+	 */
+	public PerThreadQuantileSketch(){
+		this(QuantileSketch.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param compression of the sketch of each thread
+	 */
+	public PerThreadQuantileSketch(final double compression){
+		this.compression = compression;
+	}
+
+	/**
+	 * @param value added to the sketch of the current thread
+	 */
+	public void add(final double value){
+		QuantileSketch sketch = local.get();
+		synchronized (sketch) {
+			sketch.add(value);
+		}
+	}
+
+	/**
+	 * @return new sketch with the values of all threads
+	 */
+	public QuantileSketch snapshot(){
+		QuantileSketch result = new QuantileSketch(compression);
+		for(QuantileSketch sketch: sketches){
+			synchronized (sketch) {
+				result.merge(sketch);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Summary statistics for concurrent use: every thread adds to its own SummaryStatistics (an uncontended lock),
+ * snapshot() merges them.
+ * 
+ * PerThreadSummaryStatistics sizes = new PerThreadSummaryStatistics();
+ * ..
+ * sizes.add(payload.length);
+ * ..
+ * sizes.snapshot().getStandardDeviation();
+ * 
+ * The statistics of threads that have ended are kept, use a pool of threads, not a new thread per task.
+ */
+public class PerThreadSummaryStatistics {
+
+	private final List<SummaryStatistics> statistics = new CopyOnWriteArrayList<SummaryStatistics>();
+	private final ThreadLocal<SummaryStatistics> local = new ThreadLocal<SummaryStatistics>(){
+		@Override
+		protected SummaryStatistics initialValue() {
+			SummaryStatistics created = new SummaryStatistics();
+			statistics.add(created);
+			return created;
+		}
+	};
+
+	/**
+	 * @param value added to the statistics of the current thread
+	 */
+	public void add(final double value){
+		SummaryStatistics current = local.get();
+		synchronized (current) {
+			current.add(value);
+		}
+	}
+
+	/**
+	 * @return new statistics with the values of all threads
+	 */
+	public SummaryStatistics snapshot(){
+		SummaryStatistics result = new SummaryStatistics();
+		for(SummaryStatistics current: statistics){
+			synchronized (current) {
+				result.merge(current);
+			}
+		}
+		return result;
+	}
+}
@@ -21,7 +21,7 @@ import julius.utilities.TimeCountdown;
 /**
  * Data object to hold the state for a signal type 
  */
-public class PeriodicSignalSampleHolder {
+public class PeriodicSignalSampleHolder implements SignalCounter {
 	
 	private final String id;
 	private long count = 0;
@@ -47,6 +47,7 @@ public class PeriodicSignalSampleHolder {
 	 * handle a signal 
 	 * either increase the counter, or call the callback if the current signal is not in the same window as the former/last signal before and reset counter
 	 */
+	@Override
 	public void signal(){
 		if(counter.isCompleted()){
 			callback.handleSample(id, count, durationInMs);
@@ -24,7 +24,7 @@ import julius.utilities.DateHelper;
 /**
  * This class could be used to calculate statistics per time unit. Like Frames Per Second, or messages per second.
  * 
- * It is not threadsafe. Although one could create a threadlocal instance of this class. It also makes sense to create a static
+ * It is not threadsafe. Although one could create a threadlocal instance of this class (or use ConcurrentPeriodicSignalSampler). It also makes sense to create a static
  * facade or use Spring to inject it throughout the code base.
  * 
  * It is not extremely efficient it should not be used to measure 'extremely' high frequencies. On a typical machine, empty loops
@@ -33,6 +33,9 @@ import julius.utilities.DateHelper;
  * The current implementation does not use threads to call the callback but only calls the callback for timewindows with at least
  * one count(), and also it will call the callback when it realizes that the count() is not within the former count().
  * 
+ * For the hottest paths use the SignalCounter returned by registerSignalSamplerSec, count(id) is a convenience
+ * that looks up the same handle by id.
+ * 
  * 
  */
 public class PeriodicSignalSampler {
@@ -46,9 +49,12 @@ public class PeriodicSignalSampler {
      * @param callback
      * @param size
      *            Size (in seconds) of the window for which we sum/count the signals
+     * @return handle to signal directly, without the lookup of count(id)
      */
-    public void registerSignalSamplerSec(final String id, final SignalSampleCallback callback, final int size) {
-        samplers.put(id, new PeriodicSignalSampleHolder(id, callback, DateHelper.secondsToMillis(size)));
+    public SignalCounter registerSignalSamplerSec(final String id, final SignalSampleCallback callback, final int size) {
+        PeriodicSignalSampleHolder holder = new PeriodicSignalSampleHolder(id, callback, DateHelper.secondsToMillis(size));
+        samplers.put(id, holder);
+        return holder;
     }
 
     /**
@@ -0,0 +1,269 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.util.Collection;
+
+import julius.validation.Assertions;
+
+/**
+ * Streaming quantile estimator (a merging t-digest) for any stream of values, e.g. payload sizes or queue depths.
+ * 
+ * Values are clustered into centroids (mean + weight), centroids near the median may hold many values and 
+ * centroids at the tails only a few, so extreme percentiles (p99, p999) stay accurate. New values are buffered
+ * and merged in batches. The memory is fixed on construction: with compression 100 about 600 centroid slots 
+ * (10KB), the typical error is well below 1% of the rank.
+ * 
+ * QuantileSketch sizes = new QuantileSketch(100);
+ * sizes.add(payload.length);
+ * ..
+ * sizes.getQuantile(0.99);
+ * 
+ * Sketches are mergeable, so per thread (or per period) sketches can be combined into a global view
+ * without losing accuracy. A sketch is not thread-safe, see PerThreadQuantileSketch for concurrent use.
+ */
+public class QuantileSketch {
+
+	/** default compression, ~100 centroids */
+	public static final double DEFAULT_COMPRESSION = 100;
+
+	private static final int BUFFER_FACTOR = 5;
+
+	private final double compression;
+	private final double[] means;
+	private final double[] weights;
+	private int centroids;
+	private int used;
+	private double totalWeight;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * sketch with the default compression
+	 */
+	public QuantileSketch(){
+		this(DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param compression higher is more accurate and more memory (number of centroids is at most compression + 1)
+	 */
+	public QuantileSketch(final double compression){
+		Assertions.argument.assertTrue(compression >= 10, "the compression should be >= 10");
+		this.compression = compression;
+		int size = (int) Math.ceil(compression) + 1 + BUFFER_FACTOR * (int) Math.ceil(compression);
+		this.means = new double[size];
+		this.weights = new double[size];
+	}
+
+	/**
+	 * @param value
+	 */
+	public void add(final double value){
+		add(value, 1);
+	}
+
+	/**
+	 * @param value 
+	 * @param weight number of times the value occurred (> 0)
+	 */
+	public void add(final double value, final double weight){
+		Assertions.argument.assertFalse(Double.isNaN(value), "the value should be a number");
+		Assertions.argument.assertTrue(weight > 0, "the weight should be > 0");
+		if(used == means.length){
+			compress();
+		}
+		means[used] = value;
+		weights[used] = weight;
+		used++;
+		totalWeight += weight;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * adds all values of 'other' to this sketch, 'other' is not changed
+	 * @param other
+	 */
+	public void merge(final QuantileSketch other){
+		for(int i = 0; i < other.used; i++){
+			if(used == means.length){
+				compress();
+			}
+			means[used] = other.means[i];
+			weights[used] = other.weights[i];
+			totalWeight += other.weights[i];
+			used++;
+		}
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * @param sketches
+	 * @return new sketch (with the default compression) with all values
+	 */
+	public static QuantileSketch merge(final Collection<QuantileSketch> sketches){
+		QuantileSketch result = new QuantileSketch();
+		for(QuantileSketch sketch: sketches){
+			result.merge(sketch);
+		}
+		return result;
+	}
+
+	/**
+	 * @param quantile between 0 and 1 (0.99 is the 99th percentile)
+	 * @return estimated value at the quantile, NaN when empty
+	 */
+	public double getQuantile(final double quantile){
+		Assertions.argument.assertTrue(quantile >= 0 && quantile <= 1, "the quantile should be between 0 and 1");
+		compress();
+		if(centroids == 0){
+			return Double.NaN;
+		}
+		double index = quantile * totalWeight;
+		if(index <= weights[0] / 2){
+			return interpolate(min, means[0], index / (weights[0] / 2));
+		}
+		double weightSoFar = weights[0] / 2;
+		for(int i = 0; i < centroids - 1; i++){
+			double between = (weights[i] + weights[i + 1]) / 2;
+			if(weightSoFar + between > index){
+				return interpolate(means[i], means[i + 1], (index - weightSoFar) / between);
+			}
+			weightSoFar += between;
+		}
+		double last = weights[centroids - 1] / 2;
+		return interpolate(means[centroids - 1], max, Math.min(1, (index - weightSoFar) / last));
+	}
+
+	/**
+	 * @return number (total weight) of values
+	 */
+	public long getCount(){
+		return Math.round(totalWeight);
+	}
+
+	/**
+	 * @return smallest value, NaN when empty
+	 */
+	public double getMin(){
+		return totalWeight == 0 ? Double.NaN : min;
+	}
+
+	/**
+	 * @return largest value, NaN when empty
+	 */
+	public double getMax(){
+		return totalWeight == 0 ? Double.NaN : max;
+	}
+
+	/**
+	 * @return mean of all values, NaN when empty
+	 */
+	public double getMean(){
+		double sum = 0;
+		for(int i = 0; i < used; i++){
+			sum += means[i] * weights[i];
+		}
+		return sum / totalWeight;
+	}
+
+	/**
+	 * @return number of centroids after merging the buffer (bounded by the compression)
+	 */
+	public int getCentroidCount(){
+		compress();
+		return centroids;
+	}
+
+	/**
+	 * sorts the centroids and buffered values and merges neighbours as long as the centroid stays
+	 * within one unit of the scale function k(q) = compression / 2PI * asin(2q - 1)
+	 */
+	private void compress(){
+		if(used == centroids){
+			return;
+		}
+		sort(0, used - 1);
+		int current = 0;
+		double weightBefore = 0;
+		for(int i = 1; i < used; i++){
+			double proposed = weights[current] + weights[i];
+			if(scale((weightBefore + proposed) / totalWeight) - scale(weightBefore / totalWeight) <= 1){
+				means[current] += (means[i] - means[current]) * weights[i] / proposed;
+				weights[current] = proposed;
+			}else{
+				weightBefore += weights[current];
+				current++;
+				means[current] = means[i];
+				weights[current] = weights[i];
+			}
+		}
+		centroids = current + 1;
+		used = centroids;
+	}
+
+	private double scale(final double quantile){
+		return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, quantile) - 1);
+	}
+
+	private static double interpolate(final double from, final double to, final double fraction){
+		return from + (to - from) * fraction;
+	}
+
+	/**
+	 * quicksort of the (mean, weight) pairs on mean, without boxing
+	 */
+	private void sort(final int low, final int high){
+		int left = low;
+		int right = high;
+		double pivot = means[(low + high) >>> 1];
+		while(left <= right){
+			while(means[left] < pivot){
+				left++;
+			}
+			while(means[right] > pivot){
+				right--;
+			}
+			if(left <= right){
+				swap(left++, right--);
+			}
+		}
+		if(low < right){
+			sort(low, right);
+		}
+		if(left < high){
+			sort(left, high);
+		}
+	}
+
+	private void swap(final int i, final int j){
+		double mean = means[i];
+		means[i] = means[j];
+		means[j] = mean;
+		double weight = weights[i];
+		weights[i] = weights[j];
+		weights[j] = weight;
+	}
+
+	@Override
+	public String toString() {
+		return "count:" + getCount() + "\tmin:" + getMin() + "\tp50:" + getQuantile(0.5) + "\tp99:" + getQuantile(0.99) 
+				+ "\tmax:" + getMax();
+	}
+}
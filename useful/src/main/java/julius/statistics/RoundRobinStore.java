@@ -0,0 +1,191 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import julius.validation.Assertions;
+
+/**
+ * Round-robin time series store (like RRDtool) for the samples of PeriodicSignalSampler, it keeps the history 
+ * of the throughput per id at several resolutions with memory that does not grow over time.
+ * 
+ * Every resolution is a ring of preallocated slots (signal count, duration and the period of the slot), a sample 
+ * is added to the current slot of every resolution, so the coarse resolutions are downsampled automatically. 
+ * A slot of an earlier round is recycled on first use.
+ * 
+ * RoundRobinStore history = RoundRobinStore.standard();
+ * sampler.registerSignalSamplerSec("requests", history, 1);
+ * ..
+ * double[] perMinute = history.getRates("requests", 1, TimeUnit.MINUTES, 60); // last hour
+ * 
+ * The standard resolutions (1 sec for an hour, 1 min for a day, 1 hour for 31 days) use 5784 slots of
+ * 24 bytes, about 140KB per id. Threadsafe.
+ */
+public class RoundRobinStore implements SignalSampleCallback {
+
+	private static final double MS_IN_SEC = 1000;
+
+	private final Resolution[] resolutions;
+	private final ConcurrentMap<String, Series> series = new ConcurrentHashMap<String, Series>();
+
+	/**
+	 * @param resolutions from fine to coarse
+	 */
+	public RoundRobinStore(final Resolution... resolutions){
+		Assertions.argument.assertTrue(resolutions.length > 0, "at least one resolution expected");
+		this.resolutions = resolutions.clone();
+	}
+
+	/**
+	 * @return store with 1 sec for an hour, 1 min for a day and 1 hour for 31 days
+	 */
+	public static RoundRobinStore standard(){
+		return new RoundRobinStore(new Resolution(1, TimeUnit.SECONDS, 3600), new Resolution(1, TimeUnit.MINUTES, 1440), 
+				new Resolution(1, TimeUnit.HOURS, 744));
+	}
+
+	@Override
+	public void handleSample(final String id, final long signalCount, final long durationInMs) {
+		record(id, signalCount, durationInMs, System.currentTimeMillis());
+	}
+
+	void record(final String id, final long signalCount, final long durationInMs, final long nowInMs){
+		Series target = series.get(id);
+		if(target == null){
+			Series created = new Series();
+			target = series.putIfAbsent(id, created);
+			if(target == null){
+				target = created;
+			}
+		}
+		target.record(signalCount, durationInMs, nowInMs);
+	}
+
+	/**
+	 * @param id
+	 * @param duration of the resolution
+	 * @param unit of the duration
+	 * @param points number of slots (up to the number of slots of the resolution)
+	 * @return signals per second for the last 'points' slots (oldest first, the current slot last), NaN for slots without samples
+	 */
+	public double[] getRates(final String id, final long duration, final TimeUnit unit, final int points){
+		return getRates(id, duration, unit, points, System.currentTimeMillis());
+	}
+
+	double[] getRates(final String id, final long duration, final TimeUnit unit, final int points, final long nowInMs){
+		int index = indexOf(unit.toMillis(duration));
+		Assertions.argument.assertTrue(points > 0 && points <= resolutions[index].slots, "points should be between 1 and " + resolutions[index].slots);
+		Series target = series.get(id);
+		if(target == null){
+			double[] rates = new double[points];
+			Arrays.fill(rates, Double.NaN);
+			return rates;
+		}
+		return target.rates(index, points, nowInMs);
+	}
+
+	/**
+	 * @return ids with samples
+	 */
+	public Set<String> getIds(){
+		return Collections.unmodifiableSet(series.keySet());
+	}
+
+	private int indexOf(final long durationInMs){
+		for(int i = 0; i < resolutions.length; i++){
+			if(resolutions[i].durationInMs == durationInMs){
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("no resolution of " + durationInMs + " ms");
+	}
+
+	/**
+	 * duration of a slot and the number of slots
+	 */
+	public static class Resolution {
+		private final long durationInMs;
+		private final int slots;
+
+		/**
+		 * @param duration of a slot
+		 * @param unit of duration
+		 * @param slots number of slots (the history is duration * slots)
+		 */
+		public Resolution(final long duration, final TimeUnit unit, final int slots){
+			Assertions.argument.assertTrue(duration > 0, "the duration should be > 0");
+			Assertions.argument.assertTrue(slots > 0, "the number of slots should be > 0");
+			this.durationInMs = unit.toMillis(duration);
+			this.slots = slots;
+		}
+
+		@Override
+		public String toString() {
+			return durationInMs + "ms x " + slots;
+		}
+	}
+
+	/**
+	 * the rings of one id
+	 */
+	private class Series {
+		private final long[][] periods = new long[resolutions.length][];
+		private final long[][] counts = new long[resolutions.length][];
+		private final long[][] durations = new long[resolutions.length][];
+
+		Series(){
+			for(int i = 0; i < resolutions.length; i++){
+				periods[i] = new long[resolutions[i].slots];
+				Arrays.fill(periods[i], -1);
+				counts[i] = new long[resolutions[i].slots];
+				durations[i] = new long[resolutions[i].slots];
+			}
+		}
+
+		synchronized void record(final long signalCount, final long durationInMs, final long nowInMs){
+			for(int i = 0; i < resolutions.length; i++){
+				long period = nowInMs / resolutions[i].durationInMs;
+				int slot = (int) (period % resolutions[i].slots);
+				if(periods[i][slot] != period){
+					periods[i][slot] = period;
+					counts[i][slot] = 0;
+					durations[i][slot] = 0;
+				}
+				counts[i][slot] += signalCount;
+				durations[i][slot] += durationInMs;
+			}
+		}
+
+		synchronized double[] rates(final int index, final int points, final long nowInMs){
+			double[] rates = new double[points];
+			long current = nowInMs / resolutions[index].durationInMs;
+			for(int i = 0; i < points; i++){
+				long period = current - points + 1 + i;
+				int slot = (int) (period % resolutions[index].slots);
+				boolean known = period >= 0 && periods[index][slot] == period && durations[index][slot] > 0;
+				rates[i] = known ? counts[index][slot] * MS_IN_SEC / durations[index][slot] : Double.NaN;
+			}
+			return rates;
+		}
+	}
+}
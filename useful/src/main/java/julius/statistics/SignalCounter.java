@@ -0,0 +1,31 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.statistics;
+
+/**
+ * pre-resolved handle of a registered signal, returned by registerSignalSamplerSec.
+ * 
+ * Calling signal() on the handle skips the String hashing and map lookup of count(id),
+ * keep it in a (static) field for the hottest paths.
+ */
+public interface SignalCounter {
+
+	/**
+	 * count one occurrence of the signal
+	 */
+	void signal();
+
+}
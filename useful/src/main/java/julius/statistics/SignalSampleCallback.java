@@ -18,6 +18,7 @@ package julius.statistics;
 
 /**
  * callback to handle a (periodic) signal sample
+ * it is called on the signalling thread, wrap slow callbacks (e.g. writing files) in a SignalSampleDispatcher
  */
 public interface SignalSampleCallback {
 
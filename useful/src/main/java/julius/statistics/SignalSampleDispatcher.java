@@ -0,0 +1,198 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import julius.utilities.DaemonThreadFactory;
+import julius.validation.Assertions;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Decouples a (slow) SignalSampleCallback from the signalling threads. PeriodicSignalSampleHolder.signal() calls the 
+ * callback on the thread that happens to roll the window, with this dispatcher that thread only queues the sample 
+ * and a dedicated (daemon) thread calls the callback.
+ * 
+ * SignalSampleDispatcher dispatcher = new SignalSampleDispatcher(new FileWritingCallback(), 1000, Policy.DROP);
+ * sampler.registerSignalSamplerSec("requests", dispatcher, 1);
+ * ..
+ * dispatcher.getDropped();
+ * 
+ * The queue is lock-free (a ConcurrentLinkedQueue bounded by an atomic size), when it is full the sample is 
+ * dropped and counted (Policy.DROP) or the signalling thread waits for space (Policy.BLOCK). 
+ * Samples are handed to the callback in order, from one thread.
+ */
+public class SignalSampleDispatcher implements SignalSampleCallback {
+
+	/**
+	 * what to do with a sample when the queue is full
+	 */
+	public enum Policy { 
+		/** count the sample as dropped, never delays the signalling thread */
+		DROP, 
+		/** wait until there is space, no samples are lost but the signalling thread may stall */
+		BLOCK 
+	}
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private static Logger log = Logger.getLogger(SignalSampleDispatcher.class);
+
+	private final SignalSampleCallback delegate;
+	private final int capacity;
+	private final Policy policy;
+	private final Queue<Sample> queue = new ConcurrentLinkedQueue<Sample>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong dropped = new AtomicLong();
+	private final Thread drainer;
+	private volatile boolean stopped;
+
+	/**
+	 * starts the draining thread
+	 * @param delegate the callback that handles the samples
+	 * @param capacity maximum number of queued samples
+	 * @param policy when the queue is full
+	 */
+	public SignalSampleDispatcher(final SignalSampleCallback delegate, final int capacity, final Policy policy){
+		Assertions.argument.assertNotNull(delegate, "delegate");
+		Assertions.argument.assertNotNull(policy, "policy");
+		Assertions.argument.assertTrue(capacity > 0, "the capacity should be > 0");
+		this.delegate = delegate;
+		this.capacity = capacity;
+		this.policy = policy;
+		this.drainer = new DaemonThreadFactory("julius-dispatcher").newThread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		});
+		drainer.start();
+	}
+
+	/**
+	 * queues the sample, samples handed in after shutdown are dropped
+	 */
+	@Override
+	public void handleSample(final String id, final long signalCount, final long durationInMs) {
+		while(!reserve()){
+			if(policy == Policy.DROP || stopped){
+				dropped.incrementAndGet();
+				return;
+			}
+			LockSupport.parkNanos(this, FULL_PARK_NANOS);
+		}
+		Sample sample = new Sample(id, signalCount, durationInMs);
+		queue.offer(sample);
+		LockSupport.unpark(drainer);
+		if(stopped && !drainer.isAlive() && queue.remove(sample)){
+			// reserved just before shutdown and offered after the drainer exited
+			size.decrementAndGet();
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return number of samples that were not handed to the callback because the queue was full (or stopped)
+	 */
+	public long getDropped(){
+		return dropped.get();
+	}
+
+	/**
+	 * @return number of queued samples
+	 */
+	public int getPending(){
+		return size.get();
+	}
+
+	/**
+	 * stops accepting samples, the queued samples are still handed to the callback. Samples that are queued after 
+	 * the drainer stopped (a signalling thread that reserved space just before the shutdown) are counted as dropped.
+	 * @param timeoutInMs maximum time to wait for the queue to be drained
+	 * @return whether the queue is drained (and the thread stopped)
+	 * @throws InterruptedException
+	 */
+	public boolean shutdown(final long timeoutInMs) throws InterruptedException{
+		stopped = true;
+		LockSupport.unpark(drainer);
+		drainer.join(timeoutInMs);
+		if(drainer.isAlive()){
+			return false;
+		}
+		dropLeftovers();
+		return true;
+	}
+
+	private boolean reserve(){
+		int current;
+		do{
+			current = size.get();
+			if(current >= capacity || stopped){
+				return false;
+			}
+		}while(!size.compareAndSet(current, current + 1));
+		return true;
+	}
+
+	private void dropLeftovers(){
+		while(queue.poll() != null){
+			size.decrementAndGet();
+			dropped.incrementAndGet();
+		}
+	}
+
+	private void drain(){
+		while(true){
+			Sample sample = queue.poll();
+			if(sample == null){
+				if(stopped && size.get() == 0){
+					return;
+				}
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				continue;
+			}
+			size.decrementAndGet();
+			try{
+				delegate.handleSample(sample.id, sample.signalCount, sample.durationInMs);
+			}catch(RuntimeException e){
+				log.error("callback failed for " + sample.id, e);
+			}
+		}
+	}
+
+	/**
+	 * a queued handleSample call
+	 */
+	private static class Sample {
+		private final String id;
+		private final long signalCount;
+		private final long durationInMs;
+
+		Sample(final String id, final long signalCount, final long durationInMs){
+			this.id = id;
+			this.signalCount = signalCount;
+			this.durationInMs = durationInMs;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.statistics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import julius.validation.Assertions;
+
+/**
+ * Sliding window counter, in contrast to the tumbling windows of PeriodicSignalSampler the count
+ * (and rate) can be read at any moment from any thread and always covers the last window.
+ * 
+ * The window is a ring buffer of buckets (for example 10 buckets of 100 msec, or 60 of 1 sec),
+ * a signal is counted in the bucket of the current time. Buckets that slide out of the window are
+ * cleared by the next signal or read, and a running total is kept so currentRate() is O(1).
+ * 
+ * SlidingWindowCounter requests = SlidingWindowCounter.perSecond(10);
+ * ..
+ * requests.signal();
+ * ..
+ * if(requests.currentRate() > 5000){
+ * 		shed(request);
+ * }
+ * 
+ * It is lock-free, signals at the exact moment a bucket is recycled might be dropped (but never
+ * counted twice), which is fine for rate estimations.
+ */
+public class SlidingWindowCounter {
+
+	private static final double NANOS_IN_SEC = TimeUnit.SECONDS.toNanos(1);
+
+	private final int bucketCount;
+	private final long bucketNanos;
+	private final long origin;
+	private final AtomicLongArray buckets;
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong lastEpoch = new AtomicLong();
+
+	/**
+	 * @param bucketCount number of buckets in the window (> 1)
+	 * @param bucketDuration duration of a single bucket (> 0)
+	 * @param unit of bucketDuration
+	 */
+	public SlidingWindowCounter(final int bucketCount, final long bucketDuration, final TimeUnit unit){
+		this(bucketCount, bucketDuration, unit, System.nanoTime());
+	}
+
+	SlidingWindowCounter(final int bucketCount, final long bucketDuration, final TimeUnit unit, final long origin){
+		Assertions.argument.assertTrue(bucketCount > 1, "the window should have more then one bucket");
+		Assertions.argument.assertTrue(bucketDuration > 0, "the bucket duration should be > 0");
+		this.bucketCount = bucketCount;
+		this.bucketNanos = unit.toNanos(bucketDuration);
+		this.buckets = new AtomicLongArray(bucketCount);
+		this.origin = origin;
+	}
+
+	/**
+	 * factory method for a window of 'seconds' with a bucket per second
+	 * @param seconds
+	 * @return
+	 */
+	public static SlidingWindowCounter perSecond(final int seconds){
+		return new SlidingWindowCounter(seconds, 1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * factory method for a window with buckets of 100 msec (10 buckets is a window of a second)
+	 * @param buckets
+	 * @return
+	 */
+	public static SlidingWindowCounter per100Millis(final int buckets){
+		return new SlidingWindowCounter(buckets, 100, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * counts one signal
+	 */
+	public void signal(){
+		add(1);
+	}
+
+	/**
+	 * @param amount to add to the current bucket
+	 */
+	public void add(final long amount){
+		add(amount, System.nanoTime());
+	}
+
+	void add(final long amount, final long now){
+		long epoch = advance(now);
+		buckets.addAndGet((int) (epoch % bucketCount), amount);
+		total.addAndGet(amount);
+	}
+
+	/**
+	 * @return number of signals in the window (the full buckets and the current one)
+	 */
+	public long getCount(){
+		return getCount(System.nanoTime());
+	}
+
+	long getCount(final long now){
+		advance(now);
+		return total.get();
+	}
+
+	/**
+	 * @return signals per second over the time covered by the window
+	 */
+	public double currentRate(){
+		return currentRate(System.nanoTime());
+	}
+
+	double currentRate(final long now){
+		long count = getCount(now);
+		long elapsed = now - origin;
+		long covered = Math.min(elapsed, (bucketCount - 1) * bucketNanos + elapsed % bucketNanos);
+		if(covered <= 0){
+			return 0;
+		}
+		return count * NANOS_IN_SEC / covered;
+	}
+
+	/**
+	 * @return duration of the full window in millis
+	 */
+	public long getWindowInMillis(){
+		return TimeUnit.NANOSECONDS.toMillis(bucketCount * bucketNanos);
+	}
+
+	/**
+	 * clears the buckets that slid out of the window since the former call, 
+	 * only one thread (that wins the compare-and-set) clears them
+	 * @param now
+	 * @return the current epoch (number of buckets since the creation)
+	 */
+	private long advance(final long now){
+		long epoch = (now - origin) / bucketNanos;
+		long last = lastEpoch.get();
+		while(epoch > last){
+			if(lastEpoch.compareAndSet(last, epoch)){
+				long first = Math.max(last + 1, epoch - bucketCount + 1);
+				for(long e = first; e <= epoch; e++){
+					total.addAndGet(-buckets.getAndSet((int) (e % bucketCount), 0));
+				}
+				return epoch;
+			}
+			last = lastEpoch.get();
+		}
+		return epoch;
+	}
+
+	@Override
+	public String toString() {
+		return "rate:" + currentRate() + "/s";
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that spreads its increments over multiple cells (like the java 8 LongAdder) so threads that
+ * count at the same moment hardly ever hit the same cache line.
+ * 
+ * The cell is chosen on the thread id, the cells are padded to 64 bytes to prevent false sharing.
+ * Reading (sum) is more expensive then incrementing, so this fits signals that are counted
+ * far more often than read.
+ */
+public class StripedCounter {
+
+	/** longs per cache line, only every PADDING-th slot of the array is used */
+	private static final int PADDING = 8;
+	private static final int MAX_STRIPES = 64;
+
+	private final AtomicLongArray cells;
+	private final int mask;
+
+	/**
+	 * creates a counter with one stripe per available processor (rounded up to a power of two)
+	 */
+	public StripedCounter(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param expectedConcurrency number of threads that typically count at the same time
+	 */
+	public StripedCounter(final int expectedConcurrency){
+		int stripes = 1;
+		while(stripes < expectedConcurrency && stripes < MAX_STRIPES){
+			stripes <<= 1;
+		}
+		this.mask = stripes - 1;
+		this.cells = new AtomicLongArray(stripes * PADDING);
+	}
+
+	/**
+	 * adds one
+	 */
+	public void increment(){
+		add(1);
+	}
+
+	/**
+	 * @param delta to add to the counter
+	 */
+	public void add(final long delta){
+		cells.addAndGet(cellIndex(), delta);
+	}
+
+	/**
+	 * @return the current total, not an atomic snapshot when there are concurrent updates
+	 */
+	public long sum(){
+		long sum = 0;
+		for(int i=0; i<cells.length(); i+=PADDING){
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+
+	/**
+	 * takes the current total and resets the counter, concurrent increments are counted either
+	 * in this total or in the next one but never lost
+	 * @return the total since the former reset
+	 */
+	public long sumThenReset(){
+		long sum = 0;
+		for(int i=0; i<cells.length(); i+=PADDING){
+			sum += cells.getAndSet(i, 0);
+		}
+		return sum;
+	}
+
+	private int cellIndex(){
+		long id = Thread.currentThread().getId();
+		return ((int) (id ^ (id >>> 32)) & mask) * PADDING;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(sum());
+	}
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.util.Map;
+
+import julius.utilities.collection.Histogram;
+import julius.validation.Assertions;
+
+/**
+ * Count, mean, variance, min and max of a stream of values in O(1) memory, without keeping the values
+ * (or boxing them). The mean and variance are updated with Welford's algorithm, which stays accurate where 
+ * the textbook sum of squares loses precision (large values with a small variance).
+ * 
+ * SummaryStatistics sizes = new SummaryStatistics();
+ * sizes.add(payload.length);
+ * ..
+ * sizes.getMean(); sizes.getStandardDeviation();
+ * 
+ * Statistics of different threads (or periods) can be merged (Chan's parallel algorithm), with the same result 
+ * as adding all values to one instance. A Histogram of counts can be added as a whole with add(histogram).
+ * Not thread-safe, see PerThreadSummaryStatistics for concurrent use.
+ */
+public class SummaryStatistics {
+
+	private long count;
+	private double mean;
+	private double squaredDeviations;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+
+	/**
+	 * @param value
+	 */
+	public void add(final double value){
+		Assertions.argument.assertFalse(Double.isNaN(value), "the value should be a number");
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		squaredDeviations += delta * (value - mean);
+		updateRange(value, value);
+	}
+
+	/**
+	 * adds 'value' 'times' times
+	 * @param value
+	 * @param times >= 0
+	 */
+	public void add(final double value, final long times){
+		Assertions.argument.assertFalse(Double.isNaN(value), "the value should be a number");
+		Assertions.argument.assertTrue(times >= 0, "times should be >= 0");
+		if(times > 0){
+			combine(times, value, 0, value, value);
+		}
+	}
+
+	/**
+	 * @param values
+	 */
+	public void add(final double[] values){
+		for(double value: values){
+			add(value);
+		}
+	}
+
+	/**
+	 * adds every key of the histogram as often as its count
+	 * @param histogram
+	 */
+	public void add(final Histogram<? extends Number> histogram){
+		for(Map.Entry<? extends Number, Integer> entry: histogram.entrySet()){
+			add(entry.getKey().doubleValue(), entry.getValue());
+		}
+	}
+
+	/**
+	 * adds all values of 'other' to this, 'other' is not changed
+	 * @param other
+	 */
+	public void merge(final SummaryStatistics other){
+		if(other.count > 0){
+			combine(other.count, other.mean, other.squaredDeviations, other.min, other.max);
+		}
+	}
+
+	private void combine(final long otherCount, final double otherMean, final double otherSquaredDeviations, 
+			final double otherMin, final double otherMax){
+		long total = count + otherCount;
+		double delta = otherMean - mean;
+		mean += delta * otherCount / total;
+		squaredDeviations += otherSquaredDeviations + delta * delta * count * otherCount / total;
+		count = total;
+		updateRange(otherMin, otherMax);
+	}
+
+	private void updateRange(final double low, final double high){
+		min = Double.isNaN(min) ? low : Math.min(min, low);
+		max = Double.isNaN(max) ? high : Math.max(max, high);
+	}
+
+	/**
+	 * @return number of values
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return mean, NaN when empty
+	 */
+	public double getMean() {
+		return count == 0 ? Double.NaN : mean;
+	}
+
+	/**
+	 * @return sum of all values
+	 */
+	public double getSum() {
+		return mean * count;
+	}
+
+	/**
+	 * @return sample variance (n - 1), NaN with less then two values
+	 */
+	public double getVariance() {
+		return count < 2 ? Double.NaN : squaredDeviations / (count - 1);
+	}
+
+	/**
+	 * @return population variance (n), NaN when empty
+	 */
+	public double getPopulationVariance() {
+		return count == 0 ? Double.NaN : squaredDeviations / count;
+	}
+
+	/**
+	 * @return sample standard deviation, NaN with less then two values
+	 */
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * @return smallest value, NaN when empty
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * @return largest value, NaN when empty
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "count:" + count + "\tmean:" + getMean() + "\tstddev:" + getStandardDeviation() + "\tmin:" + min + "\tmax:" + max;
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.utilities;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ThreadFactory for background helpers (samplers, monitors) that should never keep the JVM alive.
+ * 
+ * Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("julius-sampler"));
+ * 
+ * threads are named 'name-1', 'name-2' etc. so they are recognizable in thread dumps
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+	private final String name;
+	private final AtomicInteger number = new AtomicInteger();
+
+	/**
+	 * @param name prefix of the thread names
+	 */
+	public DaemonThreadFactory(final String name){
+		this.name = name;
+	}
+
+	@Override
+	public Thread newThread(final Runnable runnable) {
+		Thread thread = new Thread(runnable, name + "-" + number.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.benchmark;
+
+import julius.test.BDDTestCase;
+
+public class TestAllocationProbe extends BDDTestCase{
+
+	private static byte[] sink;
+
+	public void testAllocation(){
+		if(!AllocationProbe.isSupported()){
+			note("allocation counting not supported by this JVM, skipping");
+			return;
+		}
+		given("a started probe");
+
+			AllocationProbe probe = new AllocationProbe();
+			probe.start();
+
+		when("we allocate 1MB");
+
+			sink = new byte[1024 * 1024];
+			long bytes = probe.stop();
+
+		then("the probe measures about 1MB");
+
+			assertTrue(bytes >= 1024 * 1024);
+			assertTrue(bytes < 1024 * 1024 + 1024);
+			assertEquals(bytes, probe.getAllocatedBytes());
+
+		and("resuming accumulates");
+
+			probe.start();
+			sink = new byte[1024 * 1024];
+			assertTrue(probe.stop() >= 2 * 1024 * 1024);
+			assertNotNull(sink);
+
+		successFullStory();
+	}
+
+	public void testMemoryHelper(){
+		note("the counter of the current thread only grows");
+		MemoryHelper mh = new MemoryHelper();
+		long first = mh.getAllocatedBytesOfCurrentThread();
+		sink = new byte[1000];
+		assertTrue(mh.getAllocatedBytesOfCurrentThread() >= first);
+	}
+
+	public void testErrors(){
+		try{
+			new AllocationProbe().stop();
+			fail("only allowed after start");
+		}catch(IllegalStateException w){};
+	}
+}
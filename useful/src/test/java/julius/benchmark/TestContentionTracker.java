@@ -0,0 +1,75 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import julius.test.BDDTestCase;
+import julius.utilities.Sleep;
+
+public class TestContentionTracker extends BDDTestCase{
+
+	private final Object monitor = new Object();
+
+	public void testContention() throws InterruptedException{
+		given("a tracker and a thread that holds a monitor for 500 msec");
+
+			ContentionTracker tracker = new ContentionTracker();
+			Thread holder = new Thread("holder"){
+				@Override
+				public void run() {
+					synchronized(monitor){
+						Sleep.sleep.milliseconds(500);
+					}
+				}
+			};
+			holder.start();
+			Sleep.sleep.milliseconds(50);
+
+		when("another thread is blocked on the same monitor for about 200 msec");
+
+			Thread blocked = new Thread("blocked"){
+				@Override
+				public void run() {
+					synchronized(monitor){
+						monitor.notifyAll();
+					}
+				}
+			};
+			blocked.start();
+			Sleep.sleep.milliseconds(200);
+
+		then("the monitor is the most contended lock");
+
+			ContentionTracker.Contention contention = tracker.next();
+			System.out.println(contention.getReport());
+			assertFalse(contention.getLocks().isEmpty());
+			ContentionTracker.LockContention lock = contention.getLocks().get(0);
+			assertTrue(lock.getLockName().startsWith("java.lang.Object@"));
+			assertEquals(1, lock.getBlockedCount());
+			assertTrue(lock.getBlockedTimeInMs() >= 100 || lock.getBlockedTimeInMs() == 0); // 0 if monitoring is not supported
+			assertEquals("blocked", contention.getThreads().get(0).getThreadName());
+
+		and("a next interval without blocking does not report the monitor");
+
+			blocked.join();
+			holder.join();
+			for(ContentionTracker.LockContention other: tracker.next().getLocks()){
+				assertFalse(other.getLockName().equals(lock.getLockName()));
+			}
+
+		successFullStory();
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.lang.management.MemoryUsage;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import julius.statistics.SignalCounter;
+import julius.test.BDDTestCase;
+import julius.utilities.Sleep;
+
+public class TestGcMonitor extends BDDTestCase{
+
+	private volatile int gcCount;
+
+	public void testSystemGc(){
+		given("a started monitor with a listener and a counter");
+
+			GcMonitor monitor = new GcMonitor();
+			final List<GcEvent> events = new CopyOnWriteArrayList<GcEvent>();
+			monitor.addListener(new GcListener() {
+				@Override
+				public void handleGc(final GcEvent event) {
+					events.add(event);
+				}
+			});
+			monitor.countIn(new SignalCounter() {
+				@Override
+				public void signal() {
+					gcCount++;
+				}
+			});
+			if(monitor.start() == 0){
+				note("gc notifications are not supported by this JVM, skipping");
+				return;
+			}
+
+		when("System.gc() is called");
+
+			System.gc();
+			for(int i=0; i<20 && events.isEmpty(); i++){
+				Sleep.sleep.milliseconds(50);
+			}
+			monitor.stop();
+
+		then("the collection is reported with its cause and pool usage");
+
+			assertFalse(events.isEmpty());
+			GcEvent event = events.get(0);
+			System.out.println(event);
+			assertEquals("System.gc()", event.getCause());
+			assertFalse(event.getBefore().isEmpty());
+			assertEquals(event.getBefore().keySet(), event.getAfter().keySet());
+			assertTrue(event.getDurationInMs() >= 0);
+			assertEquals(event.isPause() ? 1 : 0, Math.min(1, monitor.getPauseRecorder().snapshot().getCount()));
+			assertTrue(gcCount >= 1);
+
+		successFullStory();
+	}
+
+	public void testPause(){
+		note("only stop the world collections are pauses");
+		Map<String, MemoryUsage> none = Collections.emptyMap();
+		assertTrue(new GcEvent("G1 Young Generation", "end of minor GC", "G1 Evacuation Pause", 1, 0, 5, none, none).isPause());
+		assertTrue(new GcEvent("PS MarkSweep", "end of major GC", "System.gc()", 1, 0, 5, none, none).isPause());
+		assertFalse(new GcEvent("ConcurrentMarkSweep", "end of major GC", "CMS Initial Mark", 1, 0, 500, none, none).isPause());
+		assertFalse(new GcEvent("ZGC Cycles", "end of GC cycle", "Allocation Rate", 1, 0, 500, none, none).isPause());
+		assertFalse(new GcEvent("Shenandoah Cycles", "end of GC cycle", "Concurrent GC", 1, 0, 500, none, none).isPause());
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import julius.test.BDDTestCase;
+import julius.utilities.CollectionHelper;
+
+public class TestLatencyRecorder extends BDDTestCase{
+
+	public void testBuckets(){
+		note("every value should fall within its bucket and the buckets should be contiguous");
+		long[] values = {0, 1, 127, 128, 129, 255, 256, 1000, 123456789L, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+		for(long value: values){
+			int index = LatencyRecorder.indexFor(value);
+			assertTrue(index < LatencyRecorder.BUCKET_COUNT);
+			assertTrue(LatencyRecorder.lowestValueAt(index) <= value);
+			assertTrue(LatencyRecorder.highestValueAt(index) >= value);
+		}
+		assertEquals(LatencyRecorder.BUCKET_COUNT - 1, LatencyRecorder.indexFor(Long.MAX_VALUE));
+		for(int i=1; i<LatencyRecorder.BUCKET_COUNT; i++){
+			assertEquals(LatencyRecorder.highestValueAt(i-1) + 1, LatencyRecorder.lowestValueAt(i));
+		}
+	}
+
+	public void testPercentiles(){
+		given("values 1..100000 micros");
+
+			LatencyRecorder recorder = new LatencyRecorder();
+			for(long i=1; i<=100000; i++){
+				recorder.record(TimeUnit.MICROSECONDS.toNanos(i));
+			}
+
+		when("a snapshot is taken");
+
+			LatencySnapshot snapshot = recorder.snapshot();
+
+		then("the percentiles are within 2% of the exact values");
+
+			assertEquals(100000, snapshot.getCount());
+			assertAboutEqual(50000000L, snapshot.getP50());
+			assertAboutEqual(90000000L, snapshot.getP90());
+			assertAboutEqual(99000000L, snapshot.getP99());
+			assertAboutEqual(99900000L, snapshot.getP999());
+			assertEquals(100000000L, snapshot.getMax());
+			assertAboutEqual(50000000L, (long) snapshot.getMean());
+			System.out.println(snapshot.getReport(TimeUnit.MICROSECONDS));
+
+		successFullStory();
+	}
+
+	public void testResetAndMerge(){
+		LatencyRecorder fast = new LatencyRecorder();
+		LatencyRecorder slow = new LatencyRecorder();
+		for(int i=0; i<99; i++){
+			fast.record(1000);
+		}
+		slow.record(1000000);
+		slow.record(-5);
+
+		note("snapshotAndReset should empty the recorder");
+		LatencySnapshot fastSnapshot = fast.snapshotAndReset();
+		assertEquals(99, fastSnapshot.getCount());
+		assertEquals(0, fast.snapshot().getCount());
+		assertEquals(0, fast.snapshot().getP99());
+
+		note("merged snapshots should show the tail of the slow one");
+		LatencySnapshot merged = fastSnapshot.merge(slow.snapshot());
+		assertEquals(101, merged.getCount());
+		assertEquals(1000000, merged.getMax());
+		assertEquals(1000000, merged.getValueAtPercentile(100));
+		assertAboutEqual(1000, merged.getP90());
+		assertEquals(0, merged.getValueAtPercentile(0));
+
+		LatencySnapshot mergedAll = LatencySnapshot.merge(CollectionHelper.list(fastSnapshot, slow.snapshot(), LatencySnapshot.empty()));
+		assertEquals(merged.getCount(), mergedAll.getCount());
+		assertEquals(merged.getP99(), mergedAll.getP99());
+	}
+
+	public void testConcurrentRecording() throws InterruptedException{
+		note("no counts should be lost when recording from multiple threads");
+		final LatencyRecorder recorder = new LatencyRecorder();
+		Thread[] threads = new Thread[4];
+		for(int t=0; t<threads.length; t++){
+			threads[t] = new Thread(){
+				@Override
+				public void run() {
+					for(int i=0; i<100000; i++){
+						recorder.record(i);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread thread: threads){
+			thread.join();
+		}
+		assertEquals(400000, recorder.snapshot().getCount());
+		assertEquals(99999, recorder.snapshot().getMax());
+	}
+
+	public void testConsistentMax(){
+		note("a max that ended up in another snapshot is kept within the highest bucket with a count");
+		long[] counts = new long[LatencyRecorder.BUCKET_COUNT];
+		int index = LatencyRecorder.indexFor(5000);
+		counts[index] = 1;
+		assertEquals(LatencyRecorder.lowestValueAt(index), LatencyRecorder.consistentMax(counts, 0));
+		assertEquals(LatencyRecorder.highestValueAt(index), LatencyRecorder.consistentMax(counts, 1000000));
+		assertEquals(5000, LatencyRecorder.consistentMax(counts, 5000));
+		assertEquals(0, LatencyRecorder.consistentMax(new long[LatencyRecorder.BUCKET_COUNT], 7));
+	}
+
+	private void assertAboutEqual(final long expected, final long actual){
+		assertTrue("expected ~" + expected + " but was " + actual, Math.abs(expected - actual) <= expected / 50);
+	}
+}
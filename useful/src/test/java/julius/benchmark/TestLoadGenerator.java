@@ -0,0 +1,79 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import julius.lambda.Operation;
+import julius.test.BDDTestCase;
+import julius.utilities.Sleep;
+
+public class TestLoadGenerator extends BDDTestCase{
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	public void testOpenLoopWithStall(){
+		given("a service that takes 1 msec, but stalls once for 300 msec");
+
+			final AtomicInteger calls = new AtomicInteger();
+			Operation<String, String> service = new Operation<String, String>() {
+				@Override
+				public String apply(final String t) {
+					Sleep.sleep.milliseconds(calls.incrementAndGet() == 50 ? 300 : 1);
+					return t;
+				}
+			};
+
+		when("it is called 100 times per second for a second by one worker");
+
+			LoadGenerator.Result result = new LoadGenerator().openLoop(service, "request", 100, 1000, 1);
+			System.out.println(result);
+
+		then("all calls are made");
+
+			assertEquals(100, result.getCompleted());
+			assertEquals(0, result.getErrors());
+
+		and("the service time hides the stall but the latency shows the calls that waited for it");
+
+			assertTrue(result.getServiceTime().getP90() < 50 * MS);
+			assertTrue(result.getLatency().getP90() > 50 * MS);
+			assertTrue(result.getLatency().getMax() >= 300 * MS);
+
+		successFullStory();
+	}
+
+	public void testClosedLoop(){
+		note("closed loop workers call back to back, errors are counted");
+		final AtomicInteger calls = new AtomicInteger();
+		LoadGenerator.Result result = new LoadGenerator().closedLoop(new Operation<String, String>() {
+			@Override
+			public String apply(final String t) {
+				Sleep.sleep.milliseconds(5);
+				if(calls.incrementAndGet() % 10 == 0){
+					throw new IllegalStateException("failure");
+				}
+				return t;
+			}
+		}, "request", 2, 300);
+		System.out.println(result);
+		assertTrue(result.getCompleted() > 20);
+		assertEquals(result.getCompleted() / 10, result.getErrors(), 1);
+		assertTrue(result.getThroughput() > 50);
+	}
+}
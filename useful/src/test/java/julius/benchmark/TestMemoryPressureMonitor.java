@@ -0,0 +1,87 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+import julius.benchmark.MemoryPressureMonitor.Severity;
+import julius.lazy.CachingLazyLoaderProxy;
+import julius.lazy.TestCachingLazyLoader.CountProxy;
+import julius.test.BDDTestCase;
+
+public class TestMemoryPressureMonitor extends BDDTestCase{
+
+	private final List<Severity> severities = new ArrayList<Severity>();
+
+	public void testPressure(){
+		given("a monitor with a cache that is flushed on critical pressure");
+
+			MemoryPressureMonitor monitor = new MemoryPressureMonitor(0.7, 0.9);
+			CachingLazyLoaderProxy<Integer, Integer> cache = new CachingLazyLoaderProxy<Integer, Integer>(new CountProxy(1));
+			monitor.flushOn(Severity.CRITICAL, cache);
+			monitor.addListener(new MemoryPressureListener() {
+				@Override
+				public void handlePressure(final Severity severity, final String pool, final MemoryUsage usage) {
+					severities.add(severity);
+				}
+			});
+			assertEquals((Integer) 1, cache.findElement());
+
+		when("the usage crosses the warning threshold");
+
+			monitor.notifyListeners("old", new MemoryUsage(0, 75, 100, 100), false);
+
+		then("the listener is warned, the cache is kept");
+
+			assertEquals(Severity.WARNING, severities.get(0));
+			assertEquals((Integer) 1, cache.findElement());
+
+		when("the usage crosses the critical threshold");
+
+			monitor.notifyListeners("old", new MemoryUsage(0, 95, 100, 100), false);
+
+		then("the cache is flushed");
+
+			assertEquals(Severity.CRITICAL, severities.get(1));
+			assertEquals((Integer) 2, cache.findElement());
+
+		and("usage above the threshold after a gc is critical");
+
+			assertEquals(Severity.CRITICAL, monitor.severityOf(new MemoryUsage(0, 91, 100, 100), true));
+
+		successFullStory();
+	}
+
+	public void testStart(){
+		MemoryPressureMonitor monitor = new MemoryPressureMonitor(0.8, 0.95);
+		int pools = monitor.start();
+		note("monitoring " + pools + " heap pools");
+		assertTrue(pools > 0);
+		monitor.stop();
+	}
+
+	public void testInvalid(){
+		try{
+			new MemoryPressureMonitor(0.9, 0.8);
+			fail("warning should be below critical");
+		}catch(IllegalArgumentException e){
+			note(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import julius.lambda.Operation;
+import julius.test.BDDTestCase;
+
+public class TestMicroBenchmark extends BDDTestCase{
+
+	private static final Operation<Integer, Long> FAST = new Operation<Integer, Long>() {
+		@Override
+		public Long apply(final Integer t) {
+			return sum(t);
+		}
+	};
+
+	private static final Operation<Integer, Long> SLOW = new Operation<Integer, Long>() {
+		@Override
+		public Long apply(final Integer t) {
+			return sum(t * 20);
+		}
+	};
+
+	public void testRun(){
+		note("the result contains the statistics of the trimmed iterations");
+		MicroBenchmark benchmark = new MicroBenchmark(2, 20, 100, 0.1);
+		MicroBenchmark.Result result = benchmark.run(FAST, 1000);
+		System.out.println(result);
+		assertEquals(16, result.getIterations());
+		assertTrue(result.getMean() > 0);
+		assertTrue(result.getMin() <= result.getMedian());
+		assertTrue(result.getMedian() <= result.getMax());
+	}
+
+	public void testCompare(){
+		given("an operation that does 20 times the work of the other");
+
+			MicroBenchmark benchmark = new MicroBenchmark(5, 30, 100, 0.1);
+
+		when("they are compared");
+
+			MicroBenchmark.Comparison comparison = benchmark.compare(FAST, SLOW, 1000);
+			System.out.println(comparison);
+
+		then("the difference is significant and B is slower");
+
+			assertTrue(comparison.isSignificant());
+			assertTrue(comparison.getRatio() > 2);
+			assertTrue(comparison.getT() > 0);
+
+		successFullStory();
+	}
+
+	public void testStatistics(){
+		note("known values of the student t distribution and gamma function");
+		assertEquals(Math.log(24), MicroBenchmark.Statistics.logGamma(5), 1e-10);
+		assertEquals(0.5 * Math.log(Math.PI), MicroBenchmark.Statistics.logGamma(0.5), 1e-10);
+		assertEquals(1.0, MicroBenchmark.Statistics.studentTTwoTailed(0, 10), 1e-10);
+		assertEquals(0.05, MicroBenchmark.Statistics.studentTTwoTailed(2.228, 10), 1e-4);
+		assertEquals(0.01, MicroBenchmark.Statistics.studentTTwoTailed(2.576, 100000), 1e-4);
+	}
+
+	public void testErrors(){
+		try{
+			new MicroBenchmark(0, 4, 1, 0.4);
+			fail("nothing left after trimming");
+		}catch(IllegalArgumentException e){};
+	}
+
+	private static long sum(final int n){
+		long sum = 0;
+		for(int i=0; i<n; i++){
+			sum += i ^ (sum >>> 3);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.benchmark;
+
+import julius.test.BDDTestCase;
+import julius.utilities.Sleep;
+
+public class TestNanoStopWatch extends BDDTestCase{
+
+	public void testSubMillisecond(){
+		note("an empty start/stop should not read as 0 and should not throw, unlike StopWatch");
+		NanoStopWatch sw = new NanoStopWatch();
+		sw.start();
+		long res = sw.stop();
+		assertTrue(res > 0);
+		assertEquals(res, sw.elapsedInNanos());
+		assertEquals(0, sw.elapsedInMillis());
+	}
+
+	public void testLaps(){
+		given("a stopwatch with two named laps repeated 3 times");
+
+			NanoStopWatch sw = new NanoStopWatch();
+			for(int i=0; i<3; i++){
+				sw.start();
+				Sleep.sleep.milliseconds(20);
+				sw.lap("first");
+				Sleep.sleep.milliseconds(40);
+				sw.lap("second");
+				sw.stop();
+			}
+
+		then("each lap is counted 3 times");
+
+			assertEquals(2, sw.getLaps().size());
+			assertEquals(3, sw.getLap("first").getCount());
+			assertEquals(3, sw.getLap("second").getCount());
+			assertNull(sw.getLap("unknown"));
+
+		and("min <= mean <= max, with the second lap about twice the first");
+
+			NanoStopWatch.Lap first = sw.getLap("first");
+			assertTrue(first.getMinNanos() <= first.getMeanNanos());
+			assertTrue(first.getMeanNanos() <= first.getMaxNanos());
+			assertTrue(first.getMinNanos() >= 20000000L);
+			assertTrue(sw.getLap("second").getMinNanos() > first.getMinNanos());
+
+		and("the total elapsed time covers all laps");
+
+			assertTrue(sw.elapsedInMillis() >= 180);
+			assertTrue(sw.getReport().contains("second"));
+
+		successFullStory();
+	}
+
+	public void testSplit(){
+		note("split should increase without stopping the watch");
+		NanoStopWatch sw = new NanoStopWatch();
+		sw.start();
+		long split1 = sw.splitInNanos();
+		Sleep.sleep.milliseconds(5);
+		long split2 = sw.splitInNanos();
+		assertTrue(split2 > split1);
+		assertTrue(sw.stop() >= split2);
+	}
+
+	public void testErrors(){
+		try{
+			new NanoStopWatch().elapsedInNanos();
+			fail("only allowed after start/stop");
+		}catch(IllegalStateException w){};
+
+		try{
+			new NanoStopWatch().stop();
+			fail("only allowed after start");
+		}catch(IllegalStateException w){};
+
+		try{
+			new NanoStopWatch().lap("x");
+			fail("only allowed after start");
+		}catch(IllegalStateException w){};
+	}
+}
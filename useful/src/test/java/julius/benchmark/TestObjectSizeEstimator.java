@@ -0,0 +1,150 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import julius.test.BDDTestCase;
+import julius.utilities.collection.MultiHashMap;
+
+public class TestObjectSizeEstimator extends BDDTestCase{
+
+	static class Node {
+		private final long value;
+		private final Node next;
+		private final int[] data;
+
+		Node(final long value, final Node next, final int[] data){
+			this.value = value;
+			this.next = next;
+			this.data = data;
+		}
+	}
+
+	static class Sub extends Node {
+		private boolean flag;
+
+		Sub(){
+			super(0, null, null);
+		}
+	}
+
+	public void testLayout(){
+		note("64 bit with compressed oops: 12 byte header, 4 byte references, aligned on 8");
+		ObjectSizeEstimator estimator = new ObjectSizeEstimator(12, 4);
+		assertEquals(16, estimator.shallowSizeOf(Object.class)); // 12 aligned
+		assertEquals(32, estimator.shallowSizeOf(Node.class)); // 12 + 8 + 4 + 4 = 28
+		assertEquals(32, estimator.shallowSizeOf(Sub.class)); // + 1 = 29
+		assertEquals(16, estimator.arraySize(int.class, 0));
+		assertEquals(56, estimator.arraySize(int.class, 10)); // 16 + 40
+		assertEquals(24, estimator.arraySize(Object.class, 2));
+
+		note("64 bit without compressed oops: 16 byte header, 8 byte references");
+		estimator = new ObjectSizeEstimator(16, 8);
+		assertEquals(40, estimator.shallowSizeOf(Node.class)); // 16 + 8 + 8 + 8
+		assertEquals(40, estimator.arraySize(Object.class, 2)); // 20 + 16
+	}
+
+	public void testDeepSize(){
+		given("a chain of 3 nodes that share one int array, and a cycle");
+
+			int[] shared = new int[10];
+			Node last = new Node(3, null, shared);
+			Node chain = new Node(1, new Node(2, last, shared), shared);
+
+		when("the deep size is estimated");
+
+			DeepSize size = new ObjectSizeEstimator(12, 4).deepSizeOf(chain);
+			System.out.println(size);
+
+		then("every object is counted once");
+
+			assertEquals(4, size.getObjects());
+			assertEquals(3 * 32 + 56, size.getTotalBytes());
+			assertEquals((Integer) 3, size.getInstancesPerClass().getCount(Node.class.getName()));
+			assertEquals((Integer) 96, size.getBytesPerClass().getCount(Node.class.getName()));
+			assertEquals((Integer) 56, size.getBytesPerClass().getCount("[I"));
+			assertEquals(Long.valueOf(96), size.getBytesPerClassAsLong().get(Node.class.getName()));
+			assertEquals(32, size.getShallowBytes());
+
+		successFullStory();
+	}
+
+	public void testLargeClasses(){
+		note("bytes per class above 2GB are kept as long, the histogram view is clamped");
+		DeepSize size = new DeepSize();
+		size.register(long[].class, 3000000000L);
+		size.register(long[].class, 3000000000L);
+		assertEquals(6000000000L, size.getTotalBytes());
+		assertEquals(Long.valueOf(6000000000L), size.getBytesPerClassAsLong().get("[J"));
+		assertEquals((Integer) Integer.MAX_VALUE, size.getBytesPerClass().getCount("[J"));
+	}
+
+	public void testJdkCollections(){
+		given("a HashMap with 1000 entries and a MultiHashMap with 100 keys of 10 values");
+
+			Map<Integer, String> map = new HashMap<Integer, String>();
+			MultiHashMap<String, Integer> multi = new MultiHashMap<String, Integer>();
+			for(int i = 0; i < 1000; i++){
+				map.put(i, "value" + i);
+				multi.addForKey("key" + (i % 100), i);
+			}
+
+		when("the deep size is estimated (with or without --add-opens)");
+
+			DeepSize mapSize = new MemoryHelper().deepSizeOf(map);
+			DeepSize multiSize = new MemoryHelper().deepSizeOf(multi);
+			note(mapSize.toString());
+			note(multiSize.toString());
+
+		then("the entries are counted, not only the map object");
+
+			assertTrue(mapSize.getTotalBytes() > 100 * mapSize.getShallowBytes());
+			assertTrue(mapSize.getTotalBytes() > 1000 * 64);
+			assertTrue(mapSize.getObjects() > 2000);
+			assertTrue(multiSize.getTotalBytes() > 1000 * 48);
+
+		and("the classes that could not be read are reported");
+
+			assertTrue(mapSize.getOpaqueClasses().isEmpty() || mapSize.getOpaqueClasses().contains(HashMap.class.getName()));
+
+		successFullStory();
+	}
+
+	public void testPublicApiEstimates(){
+		note("HashMap internals and compact Strings");
+		ObjectSizeEstimator estimator = new ObjectSizeEstimator(12, 4);
+		assertEquals(0, estimator.hashTableSize(0));
+		assertEquals(16 + 2048 * 4 + 1000 * 32, estimator.hashTableSize(1000)); // table of 2048, entries of 28 -> 32
+		assertEquals(24, estimator.stringValueSize("abc")); // 16 + 3
+		assertEquals(24, estimator.stringValueSize("\u20ac")); // 16 + 2
+		assertEquals(32, estimator.stringValueSize("\u20acuro!!")); // 16 + 12, as latin1 it would be 16 + 6
+	}
+
+	public void testMemoryHelper(){
+		note("the JVM layout is detected, an object array with itself is counted once");
+		Object[] self = new Object[1];
+		self[0] = self;
+		DeepSize size = new MemoryHelper().deepSizeOf(self);
+		assertEquals(1, size.getObjects());
+		assertTrue(size.getTotalBytes() >= 16);
+		assertEquals(0, new MemoryHelper().deepSizeOf(null).getTotalBytes());
+		assertEquals(size.getTotalBytes(), new MemoryHelper().shallowSizeOf(self));
+		assertEquals(0, new MemoryHelper().shallowSizeOf(null));
+	}
+}
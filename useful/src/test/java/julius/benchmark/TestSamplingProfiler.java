@@ -0,0 +1,115 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.benchmark;
+
+import java.io.StringWriter;
+
+import julius.test.BDDTestCase;
+import julius.utilities.Sleep;
+
+public class TestSamplingProfiler extends BDDTestCase{
+
+	private volatile boolean busy;
+
+	public void testProfile() throws Exception{
+		given("a thread that is busy in a recognizable method");
+
+			busy = true;
+			Thread worker = new Thread(){
+				@Override
+				public void run() {
+					burnCpu();
+				}
+			};
+			worker.start();
+
+		when("it is profiled for half a second");
+
+			SamplingProfiler profiler = new SamplingProfiler(5, 10000, true);
+			profiler.start();
+			Sleep.sleep.milliseconds(500);
+			profiler.stop();
+			busy = false;
+			worker.join();
+
+		then("the collapsed stacks contain the method, from root to leaf");
+
+			assertFalse(profiler.isRunning());
+			assertTrue(profiler.getSampleCount() > 10);
+			StringWriter writer = new StringWriter();
+			profiler.writeCollapsedStacks(writer);
+			assertTrue(writer.toString().contains("julius.benchmark.TestSamplingProfiler$1.run;julius.benchmark.TestSamplingProfiler.burnCpu"));
+			assertFalse(writer.toString().contains("SamplingProfiler.sample"));
+
+		successFullStory();
+	}
+
+	public void testBudget(){
+		note("with a tiny budget the profiler should stop itself");
+		SamplingProfiler profiler = new SamplingProfiler(1, 1, false);
+		profiler.start();
+		Sleep.sleep.milliseconds(500);
+		assertFalse(profiler.isRunning());
+		assertTrue(profiler.getOverheadInNanos() > 1000000);
+		profiler.reset();
+		assertEquals(0, profiler.getSampleCount());
+	}
+
+	public void testRestart(){
+		given("a profiler that is stopped and started again");
+
+			SamplingProfiler profiler = new SamplingProfiler(5, 10000, false);
+			profiler.start();
+			Sleep.sleep.milliseconds(100);
+			profiler.stop();
+			profiler.start();
+			Sleep.sleep.milliseconds(200);
+			profiler.stop();
+
+		then("the threads of the profiler are never sampled");
+
+			assertTrue(profiler.getSampleCount() > 10);
+			String stacks = profiler.getCollapsedStacks();
+			assertFalse(stacks.contains("julius.benchmark.SamplingProfiler.sample"));
+			assertFalse(stacks.contains("julius.benchmark.SamplingProfiler$1.run"));
+
+		successFullStory();
+	}
+
+	public void testMaxStacks(){
+		note("stacks beyond the maximum are counted as other");
+		SamplingProfiler profiler = new SamplingProfiler(5, 10000, false, 1);
+		profiler.sample();
+		profiler.sample();
+		assertEquals(2, profiler.getStackCounts().size());
+		assertTrue(profiler.getStackCounts().containsKey(SamplingProfiler.OTHER_STACKS));
+	}
+
+	public void testCollapse(){
+		StackTraceElement[] frames = {
+				new StackTraceElement("a.Leaf", "top", "Leaf.java", 1), 
+				new StackTraceElement("a.Root", "main", "Root.java", 1)};
+		assertEquals("a.Root.main;a.Leaf.top", SamplingProfiler.collapse(frames));
+	}
+
+	void burnCpu(){
+		long x = 0;
+		while(busy){
+			x += System.nanoTime() % 7;
+		}
+		assertTrue(x >= 0);
+	}
+}
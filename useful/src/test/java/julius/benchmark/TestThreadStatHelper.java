@@ -27,5 +27,38 @@ public class TestThreadStatHelper extends BDDTestCase{
 		assertNotNull(val);
 		assertTrue(val.length()>40);
 	}
-	
+
+	private volatile boolean busy;
+
+	public void testCpuInfo() throws InterruptedException{
+		given("a thread that burns cpu");
+
+			busy = true;
+			Thread burner = new Thread("cpu-burner"){
+				@Override
+				public void run() {
+					long x = 0;
+					while(busy){
+						x += System.nanoTime() % 3;
+					}
+					assertTrue(x >= 0);
+				}
+			};
+			burner.start();
+
+		when("we sample the cpu for 300 msec");
+
+			String val = ThreadStatHelper.getThreadCpuInfo(300, 3);
+			busy = false;
+			burner.join();
+			System.out.println(val);
+
+		then("the burner is the busiest thread");
+
+			String[] lines = val.split("\n");
+			assertEquals(4, lines.length);
+			assertTrue(lines[1].contains("cpu-burner"));
+
+		successFullStory();
+	}
 }
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import java.lang.management.ThreadInfo;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+import julius.test.BDDTestCase;
+import julius.utilities.Sleep;
+
+public class TestThreadWatchdog extends BDDTestCase{
+
+	private final List<List<ThreadInfo>> deadlocks = new CopyOnWriteArrayList<List<ThreadInfo>>();
+	private final List<ThreadInfo> blocked = new CopyOnWriteArrayList<ThreadInfo>();
+	private final List<ThreadInfo> owners = new CopyOnWriteArrayList<ThreadInfo>();
+
+	private final ThreadWatchdog watchdog = new ThreadWatchdog(100, 200, new ThreadWatchdogListener() {
+		@Override
+		public void handleDeadlock(final List<ThreadInfo> deadlocked) {
+			deadlocks.add(deadlocked);
+		}
+
+		@Override
+		public void handleLongBlock(final ThreadInfo waiting, final ThreadInfo owner, final long blockedInMs) {
+			blocked.add(waiting);
+			owners.add(owner);
+		}
+	});
+
+	public void testLongBlock() throws InterruptedException{
+		given("a thread that holds a monitor for 600 msec and another thread blocked on it");
+
+			final Object monitor = new Object();
+			Thread holder = new Thread("holder"){
+				@Override
+				public void run() {
+					synchronized(monitor){
+						Sleep.sleep.milliseconds(600);
+					}
+				}
+			};
+			holder.start();
+			Sleep.sleep.milliseconds(50);
+			Thread waiting = new Thread("waiting"){
+				@Override
+				public void run() {
+					synchronized(monitor){
+						monitor.notifyAll();
+					}
+				}
+			};
+			waiting.start();
+
+		when("the watchdog checks every 100 msec");
+
+			for(int i=0; i<5; i++){
+				Sleep.sleep.milliseconds(100);
+				watchdog.check();
+			}
+			holder.join();
+			waiting.join();
+
+		then("the blocked thread is reported once, with the stack of the owner");
+
+			assertEquals(1, blocked.size());
+			assertEquals("waiting", blocked.get(0).getThreadName());
+			assertEquals("holder", owners.get(0).getThreadName());
+			assertTrue(owners.get(0).getStackTrace().length > 0);
+			System.out.println(ThreadWatchdog.toString(owners));
+			assertTrue(deadlocks.isEmpty());
+
+		successFullStory();
+	}
+
+	public void testDeadlock() throws InterruptedException{
+		given("two threads that take two locks in opposite order");
+
+			final ReentrantLock first = new ReentrantLock();
+			final ReentrantLock second = new ReentrantLock();
+			Thread one = lockInOrder("one", first, second);
+			Thread two = lockInOrder("two", second, first);
+
+		when("the watchdog runs");
+
+			watchdog.start();
+			for(int i=0; i<20 && deadlocks.isEmpty(); i++){
+				Sleep.sleep.milliseconds(100);
+			}
+			Sleep.sleep.milliseconds(300);
+			watchdog.stop();
+			one.interrupt();
+			two.interrupt();
+			one.join();
+			two.join();
+
+		then("the deadlock is reported once, with both threads");
+
+			assertEquals(1, deadlocks.size());
+			assertEquals(2, deadlocks.get(0).size());
+
+		successFullStory();
+	}
+
+	private static Thread lockInOrder(final String name, final ReentrantLock first, final ReentrantLock second){
+		Thread thread = new Thread(name){
+			@Override
+			public void run() {
+				try{
+					first.lockInterruptibly();
+					try{
+						Sleep.sleep.milliseconds(100);
+						second.lockInterruptibly();
+						second.unlock();
+					}finally{
+						first.unlock();
+					}
+				}catch(InterruptedException e){
+					// stops the deadlock at the end of the test
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+}
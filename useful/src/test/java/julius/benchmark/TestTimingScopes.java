@@ -0,0 +1,168 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.benchmark;
+
+import julius.test.BDDTestCase;
+import julius.utilities.Sleep;
+
+public class TestTimingScopes extends BDDTestCase{
+
+	public void testTree(){
+		given("a request with a parse and two render stages, executed twice");
+
+			TimingScopes scopes = new TimingScopes();
+			for(int i=0; i<2; i++){
+				scopes.enter("request");
+					scopes.enter("parse");
+					Sleep.sleep.milliseconds(10);
+					scopes.exit();
+					for(int j=0; j<2; j++){
+						scopes.enter("render");
+						Sleep.sleep.milliseconds(20);
+						scopes.exit();
+					}
+				Sleep.sleep.milliseconds(5);
+				scopes.exit();
+			}
+
+		then("the tree has the counts, totals and self times per stage");
+
+			CallTree.Node request = scopes.currentTree().getRoot().getChild("request");
+			assertEquals(2, request.getCount());
+			assertEquals(2, request.getChildren().size());
+			CallTree.Node parse = request.getChild("parse");
+			CallTree.Node render = request.getChild("render");
+			assertEquals(2, parse.getCount());
+			assertEquals(4, render.getCount());
+			assertTrue(render.getTotalNanos() >= 80000000L);
+			assertEquals(render.getTotalNanos(), render.getSelfNanos());
+			assertEquals(request.getTotalNanos() - parse.getTotalNanos() - render.getTotalNanos(), request.getSelfNanos());
+			assertTrue(request.getSelfNanos() >= 10000000L);
+
+		and("it can be exported as text and as chrome trace");
+
+			String report = scopes.currentTree().getReport();
+			System.out.println(report);
+			assertTrue(report.contains("\n  render\tcount:4"));
+			String json = scopes.getChromeTrace();
+			assertTrue(json.startsWith("{\"traceEvents\":[{\"name\":\"request\",\"ph\":\"X\""));
+			assertTrue(json.contains("\"name\":\"render\""));
+
+		successFullStory();
+	}
+
+	public void testPerThread() throws InterruptedException{
+		note("every thread has its own tree");
+		final TimingScopes scopes = new TimingScopes();
+		scopes.enter("main");
+		Thread other = new Thread(){
+			@Override
+			public void run() {
+				scopes.enter("other");
+				scopes.exit();
+			}
+		};
+		other.start();
+		other.join();
+		scopes.exit();
+		assertEquals(2, scopes.getTrees().size());
+		assertNull(scopes.currentTree().getRoot().getChild("other"));
+		scopes.reset();
+		assertTrue(scopes.currentTree().getRoot().getChildren().isEmpty());
+	}
+
+	public void testConcurrentRead() throws InterruptedException{
+		given("a thread that keeps adding new scopes");
+
+			final TimingScopes scopes = new TimingScopes();
+			Thread writer = new Thread(){
+				@Override
+				public void run() {
+					for(int i = 0; i < 20000; i++){
+						scopes.enter("scope" + (i % 5000));
+						scopes.exit();
+					}
+				}
+			};
+			writer.start();
+
+		when("the trees are exported at the same time");
+
+			while(writer.isAlive()){
+				scopes.getChromeTrace();
+			}
+			writer.join();
+
+		then("the reader does not fail and sees all scopes in the end");
+
+			assertEquals(5000, scopes.getTrees().get(0).getRoot().getChildren().size());
+
+		and("the tree of the ended thread can be removed");
+
+			scopes.enter("live");
+			scopes.exit();
+			assertEquals(1, scopes.removeFinishedThreads().size());
+			assertEquals(1, scopes.getTrees().size());
+			scopes.remove();
+			assertTrue(scopes.getTrees().isEmpty());
+
+		successFullStory();
+	}
+
+	public void testConcurrentTimes() throws InterruptedException{
+		given("a thread that keeps running a scope with a child scope");
+
+			final TimingScopes scopes = new TimingScopes();
+			Thread writer = new Thread(){
+				@Override
+				public void run() {
+					for(int i = 0; i < 200000; i++){
+						scopes.enter("parent");
+						scopes.enter("child");
+						scopes.exit();
+						scopes.exit();
+					}
+				}
+			};
+			writer.start();
+			while(scopes.getTrees().isEmpty() || scopes.getTrees().get(0).getRoot().getChild("parent") == null){
+				Thread.yield();
+			}
+			CallTree.Node parent = scopes.getTrees().get(0).getRoot().getChild("parent");
+
+		then("another thread reads growing counts and never a negative self time");
+
+			long formerCount = 0;
+			while(writer.isAlive()){
+				long count = parent.getCount();
+				assertTrue(count >= formerCount);
+				assertTrue(parent.getSelfNanos() >= 0);
+				formerCount = count;
+			}
+			writer.join();
+			assertEquals(200000, parent.getCount());
+
+		successFullStory();
+	}
+
+	public void testErrors(){
+		try{
+			new TimingScopes().exit();
+			fail("only allowed after enter");
+		}catch(IllegalStateException w){};
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import julius.test.BDDTestCase;
+import julius.utilities.Sleep;
+
+public class AnomalyDetectorTest extends BDDTestCase {
+
+	private final List<String> anomalies = new ArrayList<String>();
+	private final List<Double> scores = new ArrayList<Double>();
+	private final List<Double> baselines = new ArrayList<Double>();
+
+	private final AnomalyListener listener = new AnomalyListener() {
+		@Override
+		public void handleAnomaly(final String id, final double rate, final double baseline, final double zScore) {
+			anomalies.add(id);
+			scores.add(zScore);
+			baselines.add(baseline);
+		}
+	};
+
+	public void testCollapse(){
+		given("a detector with a baseline of about 1000/sec for requests");
+
+			AnomalyDetector detector = new AnomalyDetector(4, listener);
+			for(int i = 0; i < 50; i++){
+				detector.handleSample("requests", 9800 + (i % 5) * 100, 10000);
+			}
+
+		then("normal noise is not reported");
+
+			assertTrue(anomalies.isEmpty());
+			assertEquals(1000, detector.getBaseline("requests"), 10);
+
+		when("the throughput collapses in one window");
+
+			detector.handleSample("requests", 2000, 10000);
+
+		then("it is reported within that window with a negative score");
+
+			assertEquals(1, anomalies.size());
+			assertEquals("requests", anomalies.get(0));
+			assertTrue(scores.get(0) < -4);
+			assertEquals(1000, baselines.get(0), 10);
+
+		successFullStory();
+	}
+
+	public void testZeroBaseline(){
+		note("a signal that was always 0 alerts when it jumps, one signal per window is the minimum deviation");
+		AnomalyDetector detector = new AnomalyDetector(0.1, 4, 5, listener);
+		for(int i = 0; i < 20; i++){
+			detector.handleSample("errors", 0, 1000);
+		}
+		detector.handleSample("errors", 2, 1000);
+		assertTrue(anomalies.isEmpty());
+		detector.handleSample("errors", 50, 1000);
+		assertEquals(1, anomalies.size());
+		assertTrue(scores.get(0) > 4);
+	}
+
+	public void testCollapseToZero(){
+		given("a detector on a scheduled sampler with 1 sec windows and a steady signal for 3 windows");
+
+			final List<Double> rates = new CopyOnWriteArrayList<Double>();
+			final AnomalyDetector detector = new AnomalyDetector(0.5, 3, 2, new AnomalyListener() {
+				@Override
+				public void handleAnomaly(final String id, final double rate, final double baseline, final double zScore) {
+					rates.add(rate);
+				}
+			});
+			final AtomicInteger windows = new AtomicInteger();
+			ConcurrentPeriodicSignalSampler sampler = ConcurrentPeriodicSignalSampler.scheduled();
+			sampler.registerSignalSamplerSec("requests", new SignalSampleCallback() {
+				@Override
+				public void handleSample(final String id, final long signalCount, final long durationInMs) {
+					windows.incrementAndGet();
+					detector.handleSample(id, signalCount, durationInMs);
+				}
+			}, 1);
+			while(windows.get() < 3){
+				sampler.count("requests");
+				Sleep.sleep.milliseconds(1);
+			}
+
+		when("the signal stops at the start of the 4th window");
+
+			while(windows.get() < 4){
+				Sleep.sleep.milliseconds(50);
+			}
+			sampler.shutdown();
+
+		then("the empty window is reported as an anomaly");
+
+			note(rates.toString());
+			assertFalse(rates.isEmpty());
+			assertTrue(rates.get(rates.size() - 1) < 10);
+
+		successFullStory();
+	}
+
+	public void testWarmup(){
+		given("a detector with a warmup of 3 windows");
+
+			AnomalyDetector detector = new AnomalyDetector(0.5, 3, 3, listener);
+
+		when("the first windows vary a lot");
+
+			detector.handleSample("x", 10, 1000);
+			detector.handleSample("x", 1000, 1000);
+			detector.handleSample("x", 10, 1000);
+
+		then("nothing is reported");
+
+			assertTrue(anomalies.isEmpty());
+			assertTrue(Double.isNaN(detector.getBaseline("unknown")));
+
+		successFullStory();
+	}
+
+	public void testFlatSignal(){
+		note("a flat signal has no variance, small changes are not reported but large ones are");
+		AnomalyDetector detector = new AnomalyDetector(0.1, 3, 5, listener);
+		for(int i = 0; i < 20; i++){
+			detector.handleSample("flat", 100, 1000);
+		}
+		detector.handleSample("flat", 101, 1000);
+		assertTrue(anomalies.isEmpty());
+		detector.handleSample("flat", 150, 1000);
+		assertEquals(1, anomalies.size());
+		assertTrue(scores.get(0) > 3);
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.statistics;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import julius.test.BDDTestCase;
+import julius.utilities.Sleep;
+
+public class ConcurrentPeriodicSignalSamplerTest extends BDDTestCase {
+
+    public void testStripedCounter() throws InterruptedException {
+        note("increments from multiple threads should not get lost");
+        final StripedCounter counter = new StripedCounter(4);
+        Thread[] threads = startThreads(4, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100000; i++) {
+                    counter.increment();
+                }
+            }
+        });
+        join(threads);
+        assertEquals(400000, counter.sum());
+        assertEquals(400000, counter.sumThenReset());
+        assertEquals(0, counter.sum());
+    }
+
+    public void testConcurrentCounting() throws InterruptedException {
+        given("a holder with a 200 msec window, that is signalled by 4 threads for about 0.5 sec");
+
+            final AtomicLong reported = new AtomicLong();
+            final AtomicLong callbacks = new AtomicLong();
+            final ConcurrentSignalSampleHolder holder = new ConcurrentSignalSampleHolder("id", new SignalSampleCallback() {
+                @Override
+                public void handleSample(final String id, final long signalCount, final long durationInMs) {
+                    reported.addAndGet(signalCount);
+                    callbacks.incrementAndGet();
+                }
+            }, 200);
+
+        when("all threads are done");
+
+            join(startThreads(4, new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 500; i++) {
+                        for (int j = 0; j < 100; j++) {
+                            holder.signal();
+                        }
+                        Sleep.sleep.milliseconds(1);
+                    }
+                }
+            }));
+
+        then("the window was rolled at least twice");
+
+            assertTrue(callbacks.get() >= 2);
+
+        and("no signal is lost: reported + current window = all signals");
+
+            assertEquals(4 * 500 * 100, reported.get() + holder.getCurrentCount());
+
+        successFullStory();
+    }
+
+    public void testRegisterWhileCounting() throws InterruptedException {
+        given("4 threads counting 10 registered ids while 50 other ids are registered (and one unregistered)");
+
+            final ConcurrentPeriodicSignalSampler sampler = new ConcurrentPeriodicSignalSampler();
+            final AtomicLong callbacks = new AtomicLong();
+            final ConcurrentMap<String, AtomicLong> reported = new ConcurrentHashMap<String, AtomicLong>();
+            SignalSampleCallback callback = new SignalSampleCallback() {
+                @Override
+                public void handleSample(final String id, final long signalCount, final long durationInMs) {
+                    callbacks.incrementAndGet();
+                    reported.putIfAbsent(id, new AtomicLong());
+                    reported.get(id).addAndGet(signalCount);
+                }
+            };
+            for (int i = 0; i < 10; i++) {
+                sampler.registerSignalSamplerSec("counted" + i, callback, 1);
+            }
+            Thread[] threads = startThreads(4, new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        sampler.count("counted" + (i % 10));
+                        Thread.yield();
+                    }
+                }
+            });
+            for (int i = 0; i < 50; i++) {
+                sampler.registerSignalSamplerSec("new" + i, callback, 1);
+            }
+            sampler.unregister("new0");
+            join(threads);
+            sampler.count("unknown");
+
+        when("every id is counted once, and once more after the window");
+
+            for (int i = 0; i < 50; i++) {
+                sampler.count("new" + i);
+            }
+            Sleep.sleep.milliseconds(1100);
+            for (int i = 0; i < 10; i++) {
+                sampler.count("counted" + i);
+            }
+            for (int i = 0; i < 50; i++) {
+                sampler.count("new" + i);
+            }
+
+        then("every count of the threads arrives (800 per id), the count that rolled the window is in the next window");
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals(800, reported.get("counted" + i).get());
+            }
+
+        and("every registered id has one window, the unregistered id none");
+
+            assertEquals(10 + 49, callbacks.get());
+            assertEquals(10 + 49, reported.size());
+            assertEquals(1, reported.get("new49").get());
+            assertNull(reported.get("new0"));
+
+        successFullStory();
+    }
+
+    public void testConcurrentReRegistration() throws InterruptedException {
+        given("a scheduled sampler of which 4 threads re-register the same id at once");
+
+            final ConcurrentPeriodicSignalSampler sampler = ConcurrentPeriodicSignalSampler.scheduled();
+            final List<Long> counts = new CopyOnWriteArrayList<Long>();
+            final SignalSampleCallback callback = new SignalSampleCallback() {
+                @Override
+                public void handleSample(final String id, final long signalCount, final long durationInMs) {
+                    counts.add(signalCount);
+                }
+            };
+            join(startThreads(4, new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 200; i++) {
+                        sampler.registerSignalSamplerSec("id", callback, 1);
+                    }
+                }
+            }));
+
+        when("the id is counted after the registrations");
+
+            sampler.count("id");
+            sampler.count("id");
+            sampler.count("id");
+            Sleep.sleep.milliseconds(1200);
+            sampler.shutdown();
+
+        then("the holder that is counted is the one that is rolled");
+
+            assertEquals(1, counts.size());
+            assertEquals(Long.valueOf(3), counts.get(0));
+
+        successFullStory();
+    }
+
+    public void testScheduledRolling() throws InterruptedException {
+        given("a scheduled sampler with a 1 sec window for a signal that is counted only once");
+
+            ConcurrentPeriodicSignalSampler sampler = ConcurrentPeriodicSignalSampler.scheduled();
+            final List<Long> counts = new CopyOnWriteArrayList<Long>();
+            final List<String> threads = new CopyOnWriteArrayList<String>();
+            sampler.registerSignalSamplerSec("id", new SignalSampleCallback() {
+                @Override
+                public void handleSample(final String id, final long signalCount, final long durationInMs) {
+                    counts.add(signalCount);
+                    threads.add(Thread.currentThread().getName());
+                }
+            }, 1);
+            sampler.count("id");
+
+        when("we wait 2.5 seconds without counting");
+
+            Sleep.sleep.milliseconds(2500);
+            sampler.shutdown();
+
+        then("both windows are reported, the second with 0 counts");
+
+            assertEquals(2, counts.size());
+            assertEquals(Long.valueOf(1), counts.get(0));
+            assertEquals(Long.valueOf(0), counts.get(1));
+
+        and("the callback is called on the background thread");
+
+            assertTrue(threads.get(0).startsWith("julius-signal-sampler"));
+
+        successFullStory();
+    }
+
+    private static Thread[] startThreads(final int number, final Runnable runnable) {
+        Thread[] threads = new Thread[number];
+        for (int t = 0; t < number; t++) {
+            threads[t] = new Thread(runnable);
+            threads[t].start();
+        }
+        return threads;
+    }
+
+    private static void join(final Thread[] threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
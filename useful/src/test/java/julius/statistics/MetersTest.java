@@ -0,0 +1,65 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.statistics;
+
+import julius.test.BDDTestCase;
+
+public class MetersTest extends BDDTestCase {
+
+    public void testRates() {
+        given("a meter that is marked 50 times per tick of 5 seconds (10/s)");
+
+            Meters meters = new Meters();
+            Meter meter = meters.registerMeter("id");
+            assertSame(meter, meters.registerMeter("id"));
+            for (int tick = 0; tick < 12; tick++) {
+                for (int i = 0; i < 50; i++) {
+                    meters.mark("id");
+                }
+                meters.tick();
+            }
+
+        then("all averages report 10/s");
+
+            assertEquals(600, meter.getCount());
+            assertEquals(10.0, meter.getOneMinuteRate(), 0.001);
+            assertEquals(10.0, meter.getFifteenMinuteRate(), 0.001);
+
+        when("the events stop for a minute");
+
+            for (int tick = 0; tick < 12; tick++) {
+                meters.tick();
+            }
+
+        then("the 1 minute rate drops faster then the 5 and 15 minute rates");
+
+            assertEquals(10.0 / Math.E, meter.getOneMinuteRate(), 0.01);
+            assertTrue(meter.getOneMinuteRate() < meter.getFiveMinuteRate());
+            assertTrue(meter.getFiveMinuteRate() < meter.getFifteenMinuteRate());
+            assertEquals(1, meters.getMeters().size());
+            meters.shutdown();
+
+        successFullStory();
+    }
+
+    public void testUnregistered() {
+        note("marks for unknown ids are skipped");
+        Meters meters = new Meters();
+        meters.mark("unknown");
+        assertNull(meters.getMeter("unknown"));
+        meters.shutdown();
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.SortedMap;
+
+import javax.management.Attribute;
+import javax.management.AttributeNotFoundException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import julius.test.BDDTestCase;
+import julius.utilities.FileHelper;
+
+public class MetricsRegistryTest extends BDDTestCase {
+
+	public void testSnapshot(){
+		given("a registry with a metric of every type");
+
+			MetricsRegistry registry = new MetricsRegistry("test");
+			registry.counter("errors").add(3);
+			registry.meter("requests").mark(5);
+			registry.meter("requests").tick();
+			registry.timer("db").record(1000);
+			registry.timer("db").record(3000);
+			registry.handleSample("sampled", 10, 1000);
+			registry.handleSample("sampled", 20, 1000);
+
+		when("a snapshot is taken");
+
+			SortedMap<String, Number> snapshot = registry.snapshot();
+			note(snapshot.toString());
+
+		then("all values are named by id");
+
+			assertEquals(3L, snapshot.get("errors.count"));
+			assertEquals(5L, snapshot.get("requests.count"));
+			assertEquals(2L, snapshot.get("db.count"));
+			assertEquals(2000.0, snapshot.get("db.mean").doubleValue(), 50);
+			assertEquals(2L, snapshot.get("sampled.count"));
+			assertEquals(20.0, snapshot.get("sampled.max"));
+
+		and("nothing is published yet");
+
+			assertTrue(registry.getPublished().isEmpty());
+
+		successFullStory();
+		registry.shutdown();
+	}
+
+	public void testOneTypePerId(){
+		MetricsRegistry registry = new MetricsRegistry("test");
+		assertSame(registry.counter("x"), registry.counter("x"));
+		try{
+			registry.timer("x");
+			fail("x is a counter");
+		}catch(IllegalArgumentException e){
+			note(e.getMessage());
+		}
+		try{
+			registry.meter("x");
+			fail("x is a counter");
+		}catch(IllegalArgumentException e){
+			note(e.getMessage());
+		}
+		assertSame(registry.meter("y"), registry.meter("y"));
+		registry.shutdown();
+	}
+
+	public void testPublish() throws Exception{
+		given("a registry that publishes to a file and JMX");
+
+			File file = File.createTempFile("metrics", ".log");
+			file.deleteOnExit();
+			MetricsRegistry registry = new MetricsRegistry("publish-test");
+			registry.publishTo(file, "1MB", 1);
+			ObjectName name = registry.registerMBean();
+			registry.counter("errors").add(7);
+
+		when("published");
+
+			registry.publish();
+
+		then("the file and the MBean have the values");
+
+			String content = FileHelper.readFileAsString(file.getPath());
+			note(content);
+			assertTrue(content.contains("errors.count\t7"));
+			assertEquals(7L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "errors.count"));
+			assertEquals(7L, registry.getPublished().get("errors.count"));
+
+		and("the MBean is read only");
+
+			try{
+				ManagementFactory.getPlatformMBeanServer().setAttribute(name, new Attribute("errors.count", 1L));
+				fail("read only");
+			}catch(AttributeNotFoundException e){
+				note(e.getMessage());
+			}
+			try{
+				ManagementFactory.getPlatformMBeanServer().invoke(name, "reset", new Object[0], new String[0]);
+				fail("no operations");
+			}catch(ReflectionException e){
+				note(e.getMessage());
+			}
+
+		and("shutdown unregisters the MBean");
+
+			registry.shutdown();
+			assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+		successFullStory();
+	}
+}
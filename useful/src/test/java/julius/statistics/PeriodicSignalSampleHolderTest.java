@@ -46,4 +46,29 @@ public class PeriodicSignalSampleHolderTest extends BDDTestCase {
         assertTrue(count >= 2);
     }
 
+    public void testHandle() {
+        PeriodicSignalSampler sampler = new PeriodicSignalSampler();
+        final long[] total = new long[1];
+
+        SignalCounter handle = sampler.registerSignalSamplerSec("id", new SignalSampleCallback() {
+
+            @Override
+            public void handleSample(final String id, final long signalCount, final long durationInMs) {
+                total[0] += signalCount;
+            }
+        }, 1);
+
+        for (int i = 0; i < 1000; i++) {
+            handle.signal();
+        }
+        for (int i = 0; i < 500; i++) {
+            sampler.count("id");
+        }
+        Sleep.sleep.milliseconds(1100);
+        handle.signal();
+
+        note("the handle and count(id) count in the same window, the signal after the window reports it");
+        assertEquals(1500, total[0]);
+    }
+
 }
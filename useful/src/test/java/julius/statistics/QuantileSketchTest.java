@@ -0,0 +1,142 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import julius.test.BDDTestCase;
+
+public class QuantileSketchTest extends BDDTestCase {
+
+	private static final int VALUES = 100000;
+
+	public void testQuantiles(){
+		given("a sketch with the values 1.." + VALUES + " in random order");
+
+			QuantileSketch sketch = new QuantileSketch();
+			for(double value: shuffled(1, VALUES)){
+				sketch.add(value);
+			}
+
+		then("the quantiles are within 0.5% of the rank");
+
+			note(sketch.toString());
+			assertEquals(VALUES, sketch.getCount());
+			assertEquals(1.0, sketch.getMin());
+			assertEquals((double) VALUES, sketch.getMax());
+			assertEquals(VALUES / 2.0, sketch.getMean(), 1);
+			assertEquals(0.5 * VALUES, sketch.getQuantile(0.5), 0.005 * VALUES);
+			assertEquals(0.9 * VALUES, sketch.getQuantile(0.9), 0.005 * VALUES);
+			assertEquals(0.99 * VALUES, sketch.getQuantile(0.99), 0.001 * VALUES);
+			assertEquals(0.999 * VALUES, sketch.getQuantile(0.999), 0.0005 * VALUES);
+			assertEquals(1.0, sketch.getQuantile(0));
+			assertEquals((double) VALUES, sketch.getQuantile(1));
+
+		and("the memory is bounded by the compression");
+
+			assertTrue(sketch.getCentroidCount() <= 101);
+
+		successFullStory();
+	}
+
+	public void testMerge(){
+		given("4 sketches with each a quarter of the values");
+
+			List<QuantileSketch> sketches = new ArrayList<QuantileSketch>();
+			List<Double> values = shuffled(1, VALUES);
+			for(int i = 0; i < 4; i++){
+				QuantileSketch sketch = new QuantileSketch();
+				for(double value: values.subList(i * VALUES / 4, (i + 1) * VALUES / 4)){
+					sketch.add(value);
+				}
+				sketches.add(sketch);
+			}
+
+		when("merged");
+
+			QuantileSketch merged = QuantileSketch.merge(sketches);
+
+		then("the merged sketch is as accurate as a single one");
+
+			note(merged.toString());
+			assertEquals(VALUES, merged.getCount());
+			assertEquals(0.5 * VALUES, merged.getQuantile(0.5), 0.005 * VALUES);
+			assertEquals(0.99 * VALUES, merged.getQuantile(0.99), 0.001 * VALUES);
+			assertEquals(VALUES / 4, sketches.get(0).getCount());
+
+		successFullStory();
+	}
+
+	public void testSmall(){
+		QuantileSketch sketch = new QuantileSketch();
+		assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+		sketch.add(5);
+		assertEquals(5.0, sketch.getQuantile(0.5));
+		sketch.add(7, 3);
+		assertEquals(4, sketch.getCount());
+		assertEquals(6.5, sketch.getMean());
+		assertEquals(7.0, sketch.getQuantile(1));
+	}
+
+	public void testPerThread() throws InterruptedException{
+		given("4 threads adding to a per thread sketch");
+
+			final PerThreadQuantileSketch sketch = new PerThreadQuantileSketch();
+			final List<Double> values = shuffled(1, VALUES);
+			List<Thread> threads = new ArrayList<Thread>();
+			for(int i = 0; i < 4; i++){
+				final List<Double> part = values.subList(i * VALUES / 4, (i + 1) * VALUES / 4);
+				threads.add(new Thread(){
+					@Override
+					public void run() {
+						for(double value: part){
+							sketch.add(value);
+						}
+					}
+				});
+			}
+
+		when("all are done");
+
+			for(Thread thread: threads){
+				thread.start();
+			}
+			for(Thread thread: threads){
+				thread.join();
+			}
+
+		then("the snapshot has all values");
+
+			QuantileSketch snapshot = sketch.snapshot();
+			assertEquals(VALUES, snapshot.getCount());
+			assertEquals(0.9 * VALUES, snapshot.getQuantile(0.9), 0.005 * VALUES);
+
+		successFullStory();
+	}
+
+	private static List<Double> shuffled(final int from, final int to){
+		List<Double> values = new ArrayList<Double>();
+		for(int i = from; i <= to; i++){
+			values.add((double) i);
+		}
+		Collections.shuffle(values, new Random(42));
+		return values;
+	}
+}
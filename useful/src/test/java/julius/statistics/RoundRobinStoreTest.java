@@ -0,0 +1,91 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import julius.statistics.RoundRobinStore.Resolution;
+import julius.test.BDDTestCase;
+
+public class RoundRobinStoreTest extends BDDTestCase {
+
+	private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+	public void testResolutions(){
+		given("a store with 1 sec for 10 sec and 1 min for 5 min");
+
+			RoundRobinStore store = new RoundRobinStore(new Resolution(1, TimeUnit.SECONDS, 10), new Resolution(1, TimeUnit.MINUTES, 5));
+
+		when("samples of 1 sec are recorded for 2 minutes at 10/sec and 20/sec");
+
+			for(int sec = 0; sec < 120; sec++){
+				store.record("requests", sec < 60 ? 10 : 20, 1000, sec * 1000L);
+			}
+			long now = 119 * 1000L;
+
+		then("the seconds have the last values");
+
+			double[] seconds = store.getRates("requests", 1, TimeUnit.SECONDS, 3, now);
+			note(Arrays.toString(seconds));
+			assertTrue(Arrays.equals(new double[]{20, 20, 20}, seconds));
+
+		and("the minutes are downsampled, older minutes are unknown");
+
+			double[] minutes = store.getRates("requests", 1, TimeUnit.MINUTES, 3, now);
+			note(Arrays.toString(minutes));
+			assertTrue(Double.isNaN(minutes[0]));
+			assertEquals(10.0, minutes[1]);
+			assertEquals(20.0, minutes[2]);
+
+		successFullStory();
+	}
+
+	public void testRecycle(){
+		given("a store with 3 slots of a minute");
+
+			RoundRobinStore store = new RoundRobinStore(new Resolution(1, TimeUnit.MINUTES, 3));
+			store.record("x", 60, 1000, 0);
+
+		when("the store has been idle for longer then the history");
+
+			store.record("x", 120, 1000, 4 * MINUTE);
+
+		then("old slots are not reported");
+
+			double[] minutes = store.getRates("x", 1, TimeUnit.MINUTES, 3, 4 * MINUTE);
+			note(Arrays.toString(minutes));
+			assertTrue(Double.isNaN(minutes[0]));
+			assertTrue(Double.isNaN(minutes[1]));
+			assertEquals(120.0, minutes[2]);
+			assertTrue(Double.isNaN(store.getRates("unknown", 1, TimeUnit.MINUTES, 1)[0]));
+
+		successFullStory();
+	}
+
+	public void testInvalid(){
+		RoundRobinStore store = RoundRobinStore.standard();
+		try{
+			store.getRates("x", 5, TimeUnit.MINUTES, 1);
+			fail("there is no 5 minute resolution");
+		}catch(IllegalArgumentException e){
+			note(e.getMessage());
+		}
+		store.handleSample("x", 1, 1000);
+		assertEquals(1, store.getIds().size());
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import julius.statistics.SignalSampleDispatcher.Policy;
+import julius.test.BDDTestCase;
+import julius.utilities.Sleep;
+
+public class SignalSampleDispatcherTest extends BDDTestCase {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final List<String> handled = new CopyOnWriteArrayList<String>();
+
+	private final SignalSampleCallback slow = new SignalSampleCallback() {
+		@Override
+		public void handleSample(final String id, final long signalCount, final long durationInMs) {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			handled.add(id + ":" + Thread.currentThread().getName().startsWith("julius-dispatcher"));
+		}
+	};
+
+	public void testDrop() throws InterruptedException{
+		given("a dispatcher for 2 samples with a callback that is busy");
+
+			SignalSampleDispatcher dispatcher = new SignalSampleDispatcher(slow, 2, Policy.DROP);
+			dispatcher.handleSample("first", 1, 1000);
+			waitUntilTaken(dispatcher);
+
+		when("5 more samples arrive");
+
+			for(int i = 0; i < 5; i++){
+				dispatcher.handleSample("next", 1, 1000);
+			}
+
+		then("they do not wait, 2 are queued and 3 are dropped");
+
+			assertEquals(2, dispatcher.getPending());
+			assertEquals(3, dispatcher.getDropped());
+
+		and("the queued samples are handled on the dispatcher thread after the callback is released");
+
+			release.countDown();
+			assertTrue(dispatcher.shutdown(1000));
+			assertEquals(3, handled.size());
+			assertEquals("first:true", handled.get(0));
+			dispatcher.handleSample("late", 1, 1000);
+			assertEquals(4, dispatcher.getDropped());
+
+		successFullStory();
+	}
+
+	public void testBlock() throws InterruptedException{
+		given("a dispatcher for 1 sample that blocks, with a callback that is busy");
+
+			final SignalSampleDispatcher dispatcher = new SignalSampleDispatcher(slow, 1, Policy.BLOCK);
+			dispatcher.handleSample("first", 1, 1000);
+			waitUntilTaken(dispatcher);
+
+		when("a thread hands in 2 more samples");
+
+			Thread producer = new Thread(){
+				@Override
+				public void run() {
+					dispatcher.handleSample("second", 1, 1000);
+					dispatcher.handleSample("third", 1, 1000);
+				}
+			};
+			producer.start();
+			Sleep.sleep.milliseconds(100);
+
+		then("it waits for space");
+
+			assertTrue(producer.isAlive());
+
+		and("nothing is lost");
+
+			release.countDown();
+			producer.join(1000);
+			assertTrue(dispatcher.shutdown(1000));
+			assertEquals(3, handled.size());
+			assertEquals(0, dispatcher.getDropped());
+
+		successFullStory();
+	}
+
+	public void testShutdownWhileSignalling() throws InterruptedException{
+		given("a dispatcher with 4 threads handing in samples");
+
+			release.countDown();
+			final SignalSampleDispatcher dispatcher = new SignalSampleDispatcher(slow, 16, Policy.DROP);
+			final int perThread = 20000;
+			Thread[] producers = new Thread[4];
+			for(int i = 0; i < producers.length; i++){
+				producers[i] = new Thread(){
+					@Override
+					public void run() {
+						for(int j = 0; j < perThread; j++){
+							dispatcher.handleSample("sample", 1, 1000);
+						}
+					}
+				};
+				producers[i].start();
+			}
+
+		when("the dispatcher is shut down while they are signalling");
+
+			Sleep.sleep.milliseconds(5);
+			assertTrue(dispatcher.shutdown(1000));
+			for(Thread producer : producers){
+				producer.join(5000);
+			}
+
+		then("every sample is either handled or dropped, nothing is left in the queue");
+
+			assertEquals(producers.length * perThread, handled.size() + dispatcher.getDropped());
+			assertEquals(0, dispatcher.getPending());
+
+		successFullStory();
+	}
+
+	private static void waitUntilTaken(final SignalSampleDispatcher dispatcher){
+		for(int i = 0; i < 100 && dispatcher.getPending() > 0; i++){
+			Sleep.sleep.milliseconds(10);
+		}
+		assertEquals(0, dispatcher.getPending());
+	}
+}
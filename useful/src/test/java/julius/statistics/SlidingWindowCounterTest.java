@@ -0,0 +1,79 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package julius.statistics;
+
+import java.util.concurrent.TimeUnit;
+
+import julius.test.BDDTestCase;
+
+public class SlidingWindowCounterTest extends BDDTestCase {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public void testSliding() {
+        given("a window of 10 buckets of 100 msec with 10 signals every 100 msec for 2 seconds");
+
+            SlidingWindowCounter counter = new SlidingWindowCounter(10, 100, TimeUnit.MILLISECONDS, 0);
+            for (long time = 0; time < 2000; time += 100) {
+                counter.add(10, time * MS);
+            }
+
+        then("the window holds only the last second and the rate is 100/s");
+
+            assertEquals(100, counter.getCount(1999 * MS));
+            assertEquals(100.0, counter.currentRate(1999 * MS), 1.0);
+
+        when("it is idle for half a second");
+
+            assertEquals(50, counter.getCount(2499 * MS));
+
+        then("the old buckets are slid out and after a full idle window nothing is left");
+
+            assertEquals(0, counter.getCount(5000 * MS));
+            assertEquals(0.0, counter.currentRate(5000 * MS));
+
+        successFullStory();
+    }
+
+    public void testStartup() {
+        note("before the first full window the rate is based on the elapsed time");
+        SlidingWindowCounter counter = new SlidingWindowCounter(10, 1, TimeUnit.SECONDS, 0);
+        counter.add(20, 500 * MS);
+        assertEquals(20, counter.getCount(1000 * MS));
+        assertEquals(20.0, counter.currentRate(1000 * MS), 0.1);
+        assertEquals(0.0, counter.currentRate(0));
+    }
+
+    public void testRealTime() {
+        note("the public api uses the real clock");
+        SlidingWindowCounter counter = SlidingWindowCounter.per100Millis(10);
+        for (int i = 0; i < 1000; i++) {
+            counter.signal();
+        }
+        assertEquals(1000, counter.getCount());
+        assertTrue(counter.currentRate() > 0);
+        assertEquals(1000, counter.getWindowInMillis());
+        assertEquals(60000, SlidingWindowCounter.perSecond(60).getWindowInMillis());
+    }
+
+    public void testErrors() {
+        try {
+            SlidingWindowCounter.perSecond(1);
+            fail("a single bucket is not a sliding window");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
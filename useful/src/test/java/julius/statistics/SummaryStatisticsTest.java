@@ -0,0 +1,129 @@
+/**
+ * Copyright 2011 AJG van Schie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package julius.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import julius.test.BDDTestCase;
+import julius.utilities.collection.Histogram;
+
+public class SummaryStatisticsTest extends BDDTestCase {
+
+	public void testWelford(){
+		given("large values with a small variance");
+
+			SummaryStatistics statistics = new SummaryStatistics();
+			statistics.add(new double[]{1e9 + 4, 1e9 + 7, 1e9 + 13, 1e9 + 16});
+
+		then("mean and variance are exact");
+
+			note(statistics.toString());
+			assertEquals(4, statistics.getCount());
+			assertEquals(1e9 + 10, statistics.getMean(), 1e-6);
+			assertEquals(30.0, statistics.getVariance(), 1e-6);
+			assertEquals(22.5, statistics.getPopulationVariance(), 1e-6);
+			assertEquals(1e9 + 4, statistics.getMin());
+			assertEquals(1e9 + 16, statistics.getMax());
+
+		successFullStory();
+	}
+
+	public void testMerge(){
+		given("values split over two statistics");
+
+			SummaryStatistics all = new SummaryStatistics();
+			SummaryStatistics first = new SummaryStatistics();
+			SummaryStatistics second = new SummaryStatistics();
+			for(int i = 0; i < 1000; i++){
+				double value = Math.sin(i) * i;
+				all.add(value);
+				(i < 300 ? first : second).add(value);
+			}
+
+		when("merged");
+
+			first.merge(second);
+			first.merge(new SummaryStatistics());
+
+		then("the result is the same as one statistics with all values");
+
+			assertEquals(all.getCount(), first.getCount());
+			assertEquals(all.getMean(), first.getMean(), 1e-9);
+			assertEquals(all.getVariance(), first.getVariance(), 1e-6);
+			assertEquals(all.getMin(), first.getMin());
+			assertEquals(all.getMax(), first.getMax());
+
+		successFullStory();
+	}
+
+	public void testHistogram(){
+		given("a histogram of sizes");
+
+			Histogram<Integer> sizes = new Histogram<Integer>();
+			sizes.put(10, 3);
+			sizes.put(20, 1);
+
+		when("added");
+
+			SummaryStatistics statistics = new SummaryStatistics();
+			statistics.add(sizes);
+
+		then("every size is counted as often as registered");
+
+			assertEquals(4, statistics.getCount());
+			assertEquals(12.5, statistics.getMean());
+			assertEquals(25.0, statistics.getVariance(), 1e-9);
+			assertEquals(50.0, statistics.getSum());
+
+		successFullStory();
+	}
+
+	public void testEmpty(){
+		SummaryStatistics statistics = new SummaryStatistics();
+		assertTrue(Double.isNaN(statistics.getMean()));
+		assertTrue(Double.isNaN(statistics.getMin()));
+		statistics.add(5);
+		assertTrue(Double.isNaN(statistics.getVariance()));
+		assertEquals(0.0, statistics.getPopulationVariance());
+	}
+
+	public void testPerThread() throws InterruptedException{
+		final PerThreadSummaryStatistics statistics = new PerThreadSummaryStatistics();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < 4; t++){
+			threads.add(new Thread(){
+				@Override
+				public void run() {
+					for(int i = 1; i <= 1000; i++){
+						statistics.add(i);
+					}
+				}
+			});
+		}
+		for(Thread thread: threads){
+			thread.start();
+		}
+		for(Thread thread: threads){
+			thread.join();
+		}
+		SummaryStatistics snapshot = statistics.snapshot();
+		assertEquals(4000, snapshot.getCount());
+		assertEquals(500.5, snapshot.getMean(), 1e-9);
+		assertEquals(1000.0, snapshot.getMax());
+	}
+}